@@ -7,8 +7,9 @@
  */
 package Scenario;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import java.io.IOException;
+
+import com.google.gson.JsonParseException;
 
 
 public class Event {
@@ -127,6 +128,20 @@ public class Event {
     this._timerState = timerState;
   };
   
+  /**
+   * Copy constructor, used to send a stored event with other timer values
+   * and by the server to keep the last sent event.
+   * @param e
+   */
+  public Event(Event e) {
+    this(e._time, e._heartRateTo, e._heartPattern, e._bloodPressureSys,
+        e._bloodPressureDias, e._bpPattern, e._oxygenTo, e._oxyPattern,
+        e._respRate, e._respPattern, e._carbTo, e._carbPattern, e._timeStamp,
+        e._heartOn, e._bpOn, e._cuffOn, e._oxyOn, e._carbOn, e._respOn,
+        e._syncTimer, e._flag, e._timerState);
+    this._index = e._index;
+  }
+  
   /**
    * Typical toString method.
    */
@@ -158,15 +173,11 @@ public class Event {
   }
   
   /**
-   * Convert an Event to JSon String.
+   * Convert an Event to a compact (single line) JSon String.
    * @return JSon String
    */
   public String toJson() {
-	  GsonBuilder builder = new GsonBuilder();
-      builder.setPrettyPrinting().serializeNulls();
-      Gson gson = builder.create();      
-      System.out.println(gson.toJson(this));	  
-	  return gson.toJson(this);
+	  return EventTypeAdapter.INSTANCE.toJson(this);
   }
   
   /**
@@ -175,7 +186,10 @@ public class Event {
    * @return The parsed Event.
    */
   static public Event fromJsonEvent(String g) {
-	  Gson gson = new Gson();
-	  return gson.fromJson(g, Event.class);	  
+	  try {
+		  return EventTypeAdapter.INSTANCE.fromJson(g);
+	  } catch (IOException e) {
+		  throw new JsonParseException(e);
+	  }
   }
 }
@@ -12,6 +12,8 @@
  */
 
 package Scenario;
+import java.util.List;
+
 import android.app.Activity;
 import android.content.Context;
 import android.view.LayoutInflater;
@@ -30,15 +32,22 @@ public class EventAdapter extends ArrayAdapter<Event>{
 
 	Context context; 
 	int layoutResourceId;    
-	Event data[] = null;
+	List<Event> data = null;
+	// Draws the list again once a page of an EventWindow is loaded.
+	private final Runnable refresh = new Runnable() {
+		public void run() {
+			notifyDataSetChanged();
+		}
+	};
 
 	/**
 	 * Constructor
 	 * @param context
 	 * @param layoutResourceId
-	 * @param data
+	 * @param data The events, an EventWindow loads them while the list
+	 * scrolls.
 	 */
-	public EventAdapter(Context context, int layoutResourceId, Event[] data) {
+	public EventAdapter(Context context, int layoutResourceId, List<Event> data) {
 		super(context, layoutResourceId, data);
 		this.layoutResourceId = layoutResourceId;
 		this.context = context;
@@ -82,8 +91,18 @@ public class EventAdapter extends ArrayAdapter<Event>{
 			holder = (EventHolder)row.getTag();
 		}
 
-		// Set the UI-Elements.
-		Event Event = data[position];
+		// Set the UI-Elements. The events of an EventWindow are not read on
+		// the UI thread, the row stays empty until its page is loaded.
+		Event Event;
+		if (data instanceof EventWindow) {
+			Event = ((EventWindow)data).peek(position, refresh);
+			if (Event == null) {
+				clearRow(holder);
+				return row;
+			}
+		} else {
+			Event = data.get(position);
+		}
 		holder.ekgVariable.setText(String.valueOf(Event._heartRateTo));
 		holder.rrSys.setText(String.valueOf(Event._bloodPressureSys));
 		holder.rrDias.setText(String.valueOf(Event._bloodPressureDias));
@@ -163,6 +182,28 @@ public class EventAdapter extends ArrayAdapter<Event>{
 		return row;
 	}
 
+	/**
+	 * Empties a row whose event is not loaded yet.
+	 * @param eh holder, that holds the UI Elements
+	 */
+	private void clearRow(EventHolder eh) {
+		TextView[] texts = {eh.ekgVariable, eh.rrSys, eh.rrDias, eh.o2Variable,
+				eh.co2Variable, eh.resp, eh.time, eh.timeStampMinutesTens,
+				eh.timeStampMinutesOnes, eh.timeStampSecondsTens,
+				eh.timeStampSecondsOnes};
+		for (TextView text : texts)
+			text.setText("");
+		ImageView[] images = {eh.heartPattern, eh.o2Pattern, eh.bpPattern,
+				eh.co2Pattern, eh.respPattern, eh.cuff};
+		for (ImageView image : images)
+			image.setVisibility(View.INVISIBLE);
+		eh.redLine.setVisibility(View.INVISIBLE);
+		eh.flag.setVisibility(View.INVISIBLE);
+		((LinearLayout.LayoutParams)eh.flagLayout.getLayoutParams()).weight = 0.0f;
+		eh.upperRow.getLayoutParams().height = LayoutParams.WRAP_CONTENT;
+		eh.lowerRow.getLayoutParams().height = LayoutParams.WRAP_CONTENT;
+	}
+
 	/**
 	 * Function to set the HeartPattern Picture.
 	 * @param e Event which should be used.
@@ -0,0 +1,405 @@
+/**
+ * Compact binary codec for the events, shared by controller and monitor.
+ * University Freiburg
+ */
+package Scenario;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Versioned binary encoding of an Event.
+ *
+ * A frame on the wire looks like:
+ *   FRAME_MARKER (1 byte), payload length (varint), payload
+ * and the payload like:
+ *   VERSION (1 byte), field mask (varint), boolean bits (varint),
+ *   the present integer and pattern fields in field order.
+ * Integers are written as zigzag varints, patterns as enum ordinals.
+ *
+ * A monitor asks for binary frames by sending HELLO (terminated by a
+ * newline) after connecting. Without it the controller keeps sending JSON.
+ * FRAME_MARKER can never start a JSON message, so the receiver can tell
+ * both formats apart by the first byte.
+ *
+ * A frame carrying only some of the fields is a delta: the receiver keeps
+ * the values of all fields missing in the mask. A frame carrying every
+ * field is a keyframe.
+ */
+public final class EventCodec {
+
+	// Version of the payload layout.
+	public static final int VERSION = 1;
+	// First byte of every binary frame.
+	public static final int FRAME_MARKER = 0x00;
+	// Line a monitor sends to request binary frames.
+	public static final String HELLO = "PAM-CODEC " + VERSION;
+	// Upper bound for the size of a frame.
+	public static final int MAX_FRAME_SIZE = 160;
+
+	// The field ids, their bit in the field mask.
+	public static final int F_INDEX = 0;
+	public static final int F_TIME = 1;
+	public static final int F_HEART_RATE_TO = 2;
+	public static final int F_HEART_PATTERN = 3;
+	public static final int F_HEART_ON = 4;
+	public static final int F_BP_SYS = 5;
+	public static final int F_BP_DIAS = 6;
+	public static final int F_BP_PATTERN = 7;
+	public static final int F_BP_ON = 8;
+	public static final int F_CUFF_ON = 9;
+	public static final int F_OXYGEN_TO = 10;
+	public static final int F_OXY_PATTERN = 11;
+	public static final int F_OXY_ON = 12;
+	public static final int F_RESP_RATE = 13;
+	public static final int F_RESP_PATTERN = 14;
+	public static final int F_RESP_ON = 15;
+	public static final int F_CARB_TO = 16;
+	public static final int F_CARB_ON = 17;
+	public static final int F_CARB_PATTERN = 18;
+	public static final int F_TIME_STAMP = 19;
+	public static final int F_SYNC_TIMER = 20;
+	public static final int F_FLAG = 21;
+	public static final int F_TIMER_STATE = 22;
+	public static final int FIELD_COUNT = 23;
+
+	// Mask with every field set.
+	public static final int ALL_FIELDS = (1 << FIELD_COUNT) - 1;
+	// Mask of the boolean fields, they are packed into one varint.
+	public static final int BOOLEAN_FIELDS = (1 << F_HEART_ON) | (1 << F_BP_ON)
+			| (1 << F_CUFF_ON) | (1 << F_OXY_ON) | (1 << F_RESP_ON)
+			| (1 << F_CARB_ON) | (1 << F_SYNC_TIMER) | (1 << F_FLAG);
+	// Mask of the fields which are commands rather than state, they are part
+	// of every delta.
+	public static final int COMMAND_FIELDS = (1 << F_INDEX) | (1 << F_TIME)
+			| (1 << F_TIME_STAMP) | (1 << F_SYNC_TIMER) | (1 << F_FLAG)
+			| (1 << F_TIMER_STATE);
+
+	/**
+	 * A decoded frame: the event and the mask of the fields it carries.
+	 */
+	public static class Update {
+		public final Event event;
+		public final int fieldMask;
+
+		Update(Event event, int fieldMask) {
+			this.event = event;
+			this.fieldMask = fieldMask;
+		}
+	}
+
+	private EventCodec() {
+	}
+
+	/**
+	 * Encode all non-null fields of an event into a complete frame.
+	 * @param e The event to encode.
+	 * @return The frame, ready to be written to a socket.
+	 */
+	public static ByteBuffer encodeFrame(Event e) {
+		return encodeFrame(e, presentFields(e));
+	}
+
+	/**
+	 * Encode the given fields of an event into a complete frame.
+	 * @param e The event to encode.
+	 * @param fieldMask The fields to encode, null fields are skipped.
+	 * @return The frame, ready to be written to a socket.
+	 */
+	public static ByteBuffer encodeFrame(Event e, int fieldMask) {
+		byte[] payload = new byte[MAX_FRAME_SIZE];
+		int length = encode(e, fieldMask & presentFields(e), payload, 0);
+		byte[] frame = new byte[1 + varintSize(length) + length];
+		frame[0] = (byte) FRAME_MARKER;
+		int pos = writeVarint(length, frame, 1);
+		System.arraycopy(payload, 0, frame, pos, length);
+		return ByteBuffer.wrap(frame);
+	}
+
+	/**
+	 * Encode the payload of an event.
+	 * @param e The event to encode.
+	 * @param fieldMask The fields to encode, the fields have to be non-null.
+	 * @param buf Target buffer, at least MAX_FRAME_SIZE bytes from offset.
+	 * @param offset Position to start writing at.
+	 * @return The number of bytes written.
+	 */
+	public static int encode(Event e, int fieldMask, byte[] buf, int offset) {
+		int pos = offset;
+		buf[pos++] = (byte) VERSION;
+		pos = writeVarint(fieldMask, buf, pos);
+		int bits = 0;
+		if (e._heartOn) bits |= 1 << F_HEART_ON;
+		if (e._bpOn) bits |= 1 << F_BP_ON;
+		if (e._cuffOn) bits |= 1 << F_CUFF_ON;
+		if (e._oxyOn) bits |= 1 << F_OXY_ON;
+		if (e._respOn) bits |= 1 << F_RESP_ON;
+		if (e._carbOn) bits |= 1 << F_CARB_ON;
+		if (e._syncTimer) bits |= 1 << F_SYNC_TIMER;
+		if (e._flag) bits |= 1 << F_FLAG;
+		pos = writeVarint(bits & fieldMask & BOOLEAN_FIELDS, buf, pos);
+
+		if (has(fieldMask, F_INDEX)) pos = writeInt(e._index, buf, pos);
+		if (has(fieldMask, F_TIME)) pos = writeInt(e._time, buf, pos);
+		if (has(fieldMask, F_HEART_RATE_TO)) pos = writeInt(e._heartRateTo, buf, pos);
+		if (has(fieldMask, F_HEART_PATTERN)) pos = writeVarint(e._heartPattern.ordinal(), buf, pos);
+		if (has(fieldMask, F_BP_SYS)) pos = writeInt(e._bloodPressureSys, buf, pos);
+		if (has(fieldMask, F_BP_DIAS)) pos = writeInt(e._bloodPressureDias, buf, pos);
+		if (has(fieldMask, F_BP_PATTERN)) pos = writeVarint(e._bpPattern.ordinal(), buf, pos);
+		if (has(fieldMask, F_OXYGEN_TO)) pos = writeInt(e._oxygenTo, buf, pos);
+		if (has(fieldMask, F_OXY_PATTERN)) pos = writeVarint(e._oxyPattern.ordinal(), buf, pos);
+		if (has(fieldMask, F_RESP_RATE)) pos = writeInt(e._respRate, buf, pos);
+		if (has(fieldMask, F_RESP_PATTERN)) pos = writeVarint(e._respPattern.ordinal(), buf, pos);
+		if (has(fieldMask, F_CARB_TO)) pos = writeInt(e._carbTo, buf, pos);
+		if (has(fieldMask, F_CARB_PATTERN)) pos = writeVarint(e._carbPattern.ordinal(), buf, pos);
+		if (has(fieldMask, F_TIME_STAMP)) pos = writeInt(e._timeStamp, buf, pos);
+		if (has(fieldMask, F_TIMER_STATE)) pos = writeVarint(e._timerState.ordinal(), buf, pos);
+		return pos - offset;
+	}
+
+	/**
+	 * Read one frame from a stream. The FRAME_MARKER has to be consumed
+	 * already.
+	 * @param in The stream to read from.
+	 * @return The decoded event.
+	 * @throws IOException On a broken stream or an unsupported frame.
+	 */
+	public static Event readFrame(InputStream in) throws IOException {
+		return readUpdate(in).event;
+	}
+
+	/**
+	 * Read one frame from a stream, keeping the field mask to apply deltas.
+	 * The FRAME_MARKER has to be consumed already.
+	 * @param in The stream to read from.
+	 * @return The decoded event and its field mask.
+	 * @throws IOException On a broken stream or an unsupported frame.
+	 */
+	public static Update readUpdate(InputStream in) throws IOException {
+		int length = readVarint(in);
+		if (length <= 0 || length > MAX_FRAME_SIZE) {
+			throw new IOException("Invalid frame length: " + length);
+		}
+		byte[] payload = new byte[length];
+		int read = 0;
+		while (read < length) {
+			int n = in.read(payload, read, length - read);
+			if (n < 0) {
+				throw new IOException("Stream closed inside frame");
+			}
+			read += n;
+		}
+		return decodeUpdate(payload, 0, length);
+	}
+
+	/**
+	 * Decode a payload. Fields missing in the payload stay null or false.
+	 * @param buf The buffer holding the payload.
+	 * @param offset Start of the payload.
+	 * @param length Length of the payload.
+	 * @return The decoded event.
+	 * @throws IOException If the payload is malformed or of another version.
+	 */
+	public static Event decode(byte[] buf, int offset, int length) throws IOException {
+		return decodeUpdate(buf, offset, length).event;
+	}
+
+	/**
+	 * Decode a payload and keep its field mask.
+	 * @param buf The buffer holding the payload.
+	 * @param offset Start of the payload.
+	 * @param length Length of the payload.
+	 * @return The decoded event and its field mask.
+	 * @throws IOException If the payload is malformed or of another version.
+	 */
+	public static Update decodeUpdate(byte[] buf, int offset, int length) throws IOException {
+		Reader r = new Reader(buf, offset, offset + length);
+		int version = r.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported codec version: " + version);
+		}
+		int fieldMask = r.readVarint();
+		int bits = r.readVarint();
+		Event e = new Event(null, null, null, null, null, null, null, null,
+				null, null, null, null, null, false, false, false, false,
+				false, false, false, false, null);
+		e._heartOn = has(bits, F_HEART_ON);
+		e._bpOn = has(bits, F_BP_ON);
+		e._cuffOn = has(bits, F_CUFF_ON);
+		e._oxyOn = has(bits, F_OXY_ON);
+		e._respOn = has(bits, F_RESP_ON);
+		e._carbOn = has(bits, F_CARB_ON);
+		e._syncTimer = has(bits, F_SYNC_TIMER);
+		e._flag = has(bits, F_FLAG);
+
+		if (has(fieldMask, F_INDEX)) e._index = r.readInt();
+		if (has(fieldMask, F_TIME)) e._time = r.readInt();
+		if (has(fieldMask, F_HEART_RATE_TO)) e._heartRateTo = r.readInt();
+		if (has(fieldMask, F_HEART_PATTERN)) e._heartPattern = r.readEnum(Event.HeartPattern.values());
+		if (has(fieldMask, F_BP_SYS)) e._bloodPressureSys = r.readInt();
+		if (has(fieldMask, F_BP_DIAS)) e._bloodPressureDias = r.readInt();
+		if (has(fieldMask, F_BP_PATTERN)) e._bpPattern = r.readEnum(Event.BloodPressPattern.values());
+		if (has(fieldMask, F_OXYGEN_TO)) e._oxygenTo = r.readInt();
+		if (has(fieldMask, F_OXY_PATTERN)) e._oxyPattern = r.readEnum(Event.O2Pattern.values());
+		if (has(fieldMask, F_RESP_RATE)) e._respRate = r.readInt();
+		if (has(fieldMask, F_RESP_PATTERN)) e._respPattern = r.readEnum(Event.RespPattern.values());
+		if (has(fieldMask, F_CARB_TO)) e._carbTo = r.readInt();
+		if (has(fieldMask, F_CARB_PATTERN)) e._carbPattern = r.readEnum(Event.CarbPattern.values());
+		if (has(fieldMask, F_TIME_STAMP)) e._timeStamp = r.readInt();
+		if (has(fieldMask, F_TIMER_STATE)) e._timerState = r.readEnum(Event.TimerState.values());
+		return new Update(e, fieldMask);
+	}
+
+	/**
+	 * Compare two events.
+	 * @param previous The last sent event, null if there is none.
+	 * @param current The new event.
+	 * @return The mask of the fields which changed plus the COMMAND_FIELDS,
+	 * all present fields if there is no previous event.
+	 */
+	public static int changedFields(Event previous, Event current) {
+		int present = presentFields(current);
+		if (previous == null) {
+			return present;
+		}
+		int mask = COMMAND_FIELDS;
+		if (!equal(previous._heartRateTo, current._heartRateTo)) mask |= 1 << F_HEART_RATE_TO;
+		if (previous._heartPattern != current._heartPattern) mask |= 1 << F_HEART_PATTERN;
+		if (previous._heartOn != current._heartOn) mask |= 1 << F_HEART_ON;
+		if (!equal(previous._bloodPressureSys, current._bloodPressureSys)) mask |= 1 << F_BP_SYS;
+		if (!equal(previous._bloodPressureDias, current._bloodPressureDias)) mask |= 1 << F_BP_DIAS;
+		if (previous._bpPattern != current._bpPattern) mask |= 1 << F_BP_PATTERN;
+		if (previous._bpOn != current._bpOn) mask |= 1 << F_BP_ON;
+		if (previous._cuffOn != current._cuffOn) mask |= 1 << F_CUFF_ON;
+		if (!equal(previous._oxygenTo, current._oxygenTo)) mask |= 1 << F_OXYGEN_TO;
+		if (previous._oxyPattern != current._oxyPattern) mask |= 1 << F_OXY_PATTERN;
+		if (previous._oxyOn != current._oxyOn) mask |= 1 << F_OXY_ON;
+		if (!equal(previous._respRate, current._respRate)) mask |= 1 << F_RESP_RATE;
+		if (previous._respPattern != current._respPattern) mask |= 1 << F_RESP_PATTERN;
+		if (previous._respOn != current._respOn) mask |= 1 << F_RESP_ON;
+		if (!equal(previous._carbTo, current._carbTo)) mask |= 1 << F_CARB_TO;
+		if (previous._carbPattern != current._carbPattern) mask |= 1 << F_CARB_PATTERN;
+		if (previous._carbOn != current._carbOn) mask |= 1 << F_CARB_ON;
+		return mask & present;
+	}
+
+	/**
+	 * @return The mask of all fields of the event which are not null.
+	 */
+	public static int presentFields(Event e) {
+		int mask = BOOLEAN_FIELDS;
+		if (e._index != null) mask |= 1 << F_INDEX;
+		if (e._time != null) mask |= 1 << F_TIME;
+		if (e._heartRateTo != null) mask |= 1 << F_HEART_RATE_TO;
+		if (e._heartPattern != null) mask |= 1 << F_HEART_PATTERN;
+		if (e._bloodPressureSys != null) mask |= 1 << F_BP_SYS;
+		if (e._bloodPressureDias != null) mask |= 1 << F_BP_DIAS;
+		if (e._bpPattern != null) mask |= 1 << F_BP_PATTERN;
+		if (e._oxygenTo != null) mask |= 1 << F_OXYGEN_TO;
+		if (e._oxyPattern != null) mask |= 1 << F_OXY_PATTERN;
+		if (e._respRate != null) mask |= 1 << F_RESP_RATE;
+		if (e._respPattern != null) mask |= 1 << F_RESP_PATTERN;
+		if (e._carbTo != null) mask |= 1 << F_CARB_TO;
+		if (e._carbPattern != null) mask |= 1 << F_CARB_PATTERN;
+		if (e._timeStamp != null) mask |= 1 << F_TIME_STAMP;
+		if (e._timerState != null) mask |= 1 << F_TIMER_STATE;
+		return mask;
+	}
+
+	/**
+	 * @return true if the field is set in the mask.
+	 */
+	public static boolean has(int mask, int field) {
+		return (mask & (1 << field)) != 0;
+	}
+
+	private static boolean equal(Integer a, Integer b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private static int writeInt(int value, byte[] buf, int pos) {
+		// zigzag, small negative numbers stay small
+		return writeVarint((value << 1) ^ (value >> 31), buf, pos);
+	}
+
+	private static int writeVarint(int value, byte[] buf, int pos) {
+		while ((value & ~0x7F) != 0) {
+			buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[pos++] = (byte) value;
+		return pos;
+	}
+
+	private static int varintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static int readVarint(InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new IOException("Stream closed inside varint");
+			}
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Bounds checked reader over a payload.
+	 */
+	private static class Reader {
+		private final byte[] buf;
+		private final int end;
+		private int pos;
+
+		Reader(byte[] buf, int offset, int end) {
+			this.buf = buf;
+			this.pos = offset;
+			this.end = end;
+		}
+
+		int readByte() throws IOException {
+			if (pos >= end) {
+				throw new IOException("Truncated payload");
+			}
+			return buf[pos++] & 0xFF;
+		}
+
+		int readVarint() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = readByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed varint");
+		}
+
+		int readInt() throws IOException {
+			int raw = readVarint();
+			return (raw >>> 1) ^ -(raw & 1);
+		}
+
+		<T extends Enum<T>> T readEnum(T[] values) throws IOException {
+			int ordinal = readVarint();
+			if (ordinal < 0 || ordinal >= values.length) {
+				throw new IOException("Unknown pattern ordinal: " + ordinal);
+			}
+			return values[ordinal];
+		}
+	}
+}
@@ -0,0 +1,234 @@
+/**
+ * Paged view on the stored events of a scenario.
+ * University Freiburg
+ */
+package Scenario;
+
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Read only list of the events of a stored scenario, which loads them page
+ * by page from the EVENTS table when they are asked for. Only the last
+ * MAX_PAGES pages are kept, so a protocol of several hours never is in
+ * memory as a whole. Every page is one short query on the index of the
+ * events, no cursor is kept open between two pages.
+ *
+ * The list is used from the UI thread. The EventAdapter draws the rows with
+ * peek(), which never waits for the database: a row whose page is missing
+ * stays empty until the page is loaded in the background. get() loads a
+ * missing page at once. It is left to the scenario player and the clicks
+ * on the list, which ask for events on the screen or for the next events,
+ * and the player calls prefetch() with its position to load those before
+ * they are due.
+ *
+ * Positions are the SEQ values of the events, which ScenarioHelper numbers
+ * from 0 without gaps.
+ */
+public final class EventWindow extends AbstractList<Event> {
+
+	// Events per page.
+	static final int PAGE_SIZE = 64;
+	// Pages kept in memory.
+	static final int MAX_PAGES = 8;
+	// The player loads the events up to this many positions ahead.
+	static final int PREFETCH_DISTANCE = PAGE_SIZE;
+
+	private static final String TAG = "EventWindow";
+
+	private final ScenarioHelper _helper;
+	// Loads the pages for prefetch().
+	private final Executor _loader;
+	private final long _scenarioId;
+	private final int _size;
+	// The pages in the order of their last use, the oldest is dropped.
+	private final LinkedHashMap<Integer, Event[]> _pages =
+			new LinkedHashMap<Integer, Event[]>(MAX_PAGES + 1, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer, Event[]> eldest) {
+					return size() > MAX_PAGES;
+				}
+			};
+	// Pages handed to the loader and not yet loaded.
+	private final boolean[] _loading;
+	// Run on the UI thread once the page is loaded, set by peek().
+	private final Runnable[] _onLoaded;
+	private final Handler _uiHandler = new Handler(Looper.getMainLooper());
+
+	// Statistics
+	private int _pageLoads = 0;
+	private int _prefetchLoads = 0;
+	private int _misses = 0;
+
+	/**
+	 * Constructor, see ScenarioHelper.getEventWindow().
+	 * @param helper The database of the events.
+	 * @param loader Loads the pages for prefetch().
+	 * @param scenarioId The row of the scenario.
+	 * @param size The number of events of the scenario.
+	 */
+	EventWindow(ScenarioHelper helper, Executor loader, long scenarioId, int size) {
+		_helper = helper;
+		_loader = loader;
+		_scenarioId = scenarioId;
+		_size = size;
+		_loading = new boolean[(size + PAGE_SIZE - 1) / PAGE_SIZE];
+		_onLoaded = new Runnable[_loading.length];
+	}
+
+	/**
+	 * Returns the event at the position, loads its page if it is not in
+	 * memory.
+	 */
+	@Override
+	public Event get(int position) {
+		if (position < 0 || position >= _size)
+			throw new IndexOutOfBoundsException("Event " + position + " of " + _size);
+		int page = position / PAGE_SIZE;
+		Event[] events;
+		synchronized (this) {
+			events = _pages.get(page);
+			if (events == null)
+				_misses++;
+		}
+		if (events == null)
+			events = load(page, false);
+		return events[position - page * PAGE_SIZE];
+	}
+
+	/**
+	 * Returns the event at the position if its page is in memory. Otherwise
+	 * the page is loaded in the background and null is returned.
+	 * @param onLoaded Run on the UI thread once the page is loaded, e.g. to
+	 * draw the list again.
+	 */
+	public Event peek(int position, Runnable onLoaded) {
+		if (position < 0 || position >= _size)
+			throw new IndexOutOfBoundsException("Event " + position + " of " + _size);
+		int page = position / PAGE_SIZE;
+		synchronized (this) {
+			Event[] events = _pages.get(page);
+			if (events != null)
+				return events[position - page * PAGE_SIZE];
+			_onLoaded[page] = onLoaded;
+		}
+		loadInBackground(page, false);
+		return null;
+	}
+
+	@Override
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Loads the events from the position up to PREFETCH_DISTANCE positions
+	 * ahead in the background, if they are not in memory yet.
+	 * @param position The position of the player.
+	 */
+	public void prefetch(int position) {
+		if (position >= _size)
+			return;
+		int first = Math.max(position, 0) / PAGE_SIZE;
+		int last = Math.min(position + PREFETCH_DISTANCE, _size - 1) / PAGE_SIZE;
+		for (int page = first; page <= last; page++)
+			loadInBackground(page, true);
+	}
+
+	/**
+	 * Hands a page to the loader, if it is neither in memory nor loading.
+	 */
+	private void loadInBackground(final int page, final boolean prefetch) {
+		synchronized (this) {
+			if (_loading[page] || _pages.containsKey(page))
+				return;
+			_loading[page] = true;
+		}
+		_loader.execute(new Runnable() {
+			public void run() {
+				try {
+					load(page, prefetch);
+				} catch (RuntimeException e) {
+					// get() and peek() try again when the events are asked for.
+					Log.e(TAG, "Could not load page " + page, e);
+					synchronized (EventWindow.this) {
+						_loading[page] = false;
+						_onLoaded[page] = null;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Loads a page and puts it into memory. If the page was loaded in the
+	 * meantime, that one is kept, so a position always gives the same event
+	 * while it is in memory. Posts the notice of peek(), if any.
+	 */
+	private Event[] load(int page, boolean prefetch) {
+		int first = page * PAGE_SIZE;
+		List<Event> list = _helper.loadEvents(_scenarioId, first,
+				Math.min(PAGE_SIZE, _size - first));
+		Event[] events = list.toArray(new Event[list.size()]);
+		Runnable onLoaded;
+		synchronized (this) {
+			_loading[page] = false;
+			onLoaded = _onLoaded[page];
+			_onLoaded[page] = null;
+			Event[] loaded = _pages.get(page);
+			if (loaded != null) {
+				events = loaded;
+			} else {
+				if (events.length < Math.min(PAGE_SIZE, _size - first))
+					throw new IllegalStateException("Events of the scenario changed");
+				_pages.put(page, events);
+				_pageLoads++;
+				if (prefetch)
+					_prefetchLoads++;
+			}
+		}
+		if (onLoaded != null)
+			_uiHandler.post(onLoaded);
+		return events;
+	}
+
+	/**
+	 * @return The number of pages loaded.
+	 */
+	public synchronized int getPageLoads() {
+		return _pageLoads;
+	}
+
+	/**
+	 * @return The number of pages loaded by prefetch().
+	 */
+	public synchronized int getPrefetchLoads() {
+		return _prefetchLoads;
+	}
+
+	/**
+	 * @return The number of calls to get() which had to wait for a page.
+	 */
+	public synchronized int getMisses() {
+		return _misses;
+	}
+
+	/**
+	 * @return The number of events in memory.
+	 */
+	public synchronized int getLoadedEvents() {
+		int events = 0;
+		for (Event[] page : _pages.values())
+			events += page.length;
+		return events;
+	}
+}
@@ -9,9 +9,10 @@ package Scenario;
 
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
 
 
 import android.content.ContentValues;
@@ -20,15 +21,40 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
+/**
+ * The scenarios and protocols are stored in two tables: SCENARIOS holds the
+ * name and the runnable value of every scenario, EVENTS holds the events of
+ * all scenarios keyed by the scenario and their position in the scenario.
+ * The positions (SEQ) of a scenario are numbered from 0 without gaps, so
+ * a part of the events is read by its range of positions.
+ * Up to version 1 every scenario had a table of its own and the names were
+ * kept in a second database (SCENARIODATABASE), onUpgrade() moves them into
+ * the two tables.
+ */
 public class ScenarioHelper extends SQLiteOpenHelper {
 
-	private ScenarioDatabaseHelper scenarioDatabaseHelper;
-
 	// If you change the database schema, you must increment the database version.
-	private static final int DATABASE_VERSION = 1;
+	// Version 2: one table for the scenarios and one for the events.
+	private static final int DATABASE_VERSION = 2;
+
+	// The tables.
+	private static final String TABLE_SCENARIOS = "SCENARIOS";
+	private static final String TABLE_EVENTS = "EVENTS";
+	// The index of the events of a scenario.
+	private static final String INDEX_EVENTS = "EVENTS_SCENARIO_SEQ";
+	// The index separating the scenarios from the protocols.
+	private static final String INDEX_RUNNABLE = "SCENARIOS_RUNNABLE";
+
+	// The columns of the scenarios.
+	private static final String KEY_INDEX = "_id";
+	private static final String KEY_NAME = "NAME";
+	private static final String KEY_RUNNABLE = "RUNNABLE";
 
-	// The columns.
+	// The columns of the events.
+	private static final String KEY_SCENARIO = "SCENARIO_ID";
+	private static final String KEY_SEQ = "SEQ";
 	private static final String KEY_TIME = "TIME";
 	private static final String KEY_HRTO = "HRTO";
 	private static final String KEY_HEARTPATTERN = "HEARTPATTERN";
@@ -58,10 +84,26 @@ public class ScenarioHelper extends SQLiteOpenHelper {
 	private static final String KEY_SYNCTIMER = "SYNCTIMER";
 	private static final String KEY_TIMERSTATE = "TIMERSTATE";
 
+	// The values of an event, in the order of the old scenario tables.
+	private static final String[] EVENT_COLUMNS = {KEY_TIME, KEY_HRTO,
+		KEY_HEARTPATTERN, KEY_BPSYS, KEY_BPDIAS, KEY_BPPATTERN, KEY_OXYTO,
+		KEY_OXYPATTERN, KEY_RESPTO, KEY_RESPPATTERN, KEY_CARBTO,
+		KEY_CARBPATTERN, KEY_TIMESTAMP, KEY_HEARTON, KEY_BPON, KEY_CUFFON,
+		KEY_OXYON, KEY_CARBON, KEY_RESPON, KEY_SYNCTIMER, KEY_FLAG,
+		KEY_TIMERSTATE};
+
 	private static final String INTEGER = " INTEGER,";
 
-	private static String _DATABASE_NAME = "ScenarioDatabase";  
-	private static final String KEY_INDEX = "_id";
+	// Insert statement of an event, the arguments are bound by addEvent().
+	private static final String INSERT_EVENT = insertEventSql();
+
+	private static String _DATABASE_NAME = "ScenarioDatabase";
+	// The database of the scenario names up to version 1.
+	private static final String LEGACY_DATABASE_NAME = "SCENARIODATABASE";
+
+	private final Context _context;
+	// Set by the migration, the legacy database is deleted once it is committed.
+	private boolean _legacyMigrated = false;
 	
 	/**
 	 * Constructor
@@ -69,69 +111,82 @@ public class ScenarioHelper extends SQLiteOpenHelper {
 	 */
 	public ScenarioHelper(Context context) {      
 		super(context, _DATABASE_NAME, null, DATABASE_VERSION);
-		scenarioDatabaseHelper = new ScenarioDatabaseHelper(context);
+		_context = context;
 	}    
 
 	/**
 	 * Add a scenario to the database
+	 * The scenario and all its events are written in one transaction, so a
+	 * long protocol costs one commit instead of one per event.
 	 * @param theScenario
 	 * @return 1 if successful -1 if not. 
 	 */
 	public int addScenario(Scenario theScenario) {  
-		// Add the Scenario to the Scenario Database.    	
-		if (this.scenarioDatabaseHelper.addScenario(theScenario) != -1) {
-			// Create a new table.
-			String CREATE_EVENTS_TABLE = "CREATE TABLE IF NOT EXISTS "
-					+ theScenario.getName() + " ( " + 
-					KEY_INDEX + " INTEGER PRIMARY KEY , " +
-					KEY_TIME + INTEGER +
-					KEY_HRTO + INTEGER +
-					KEY_HEARTPATTERN + INTEGER +
-					KEY_BPSYS + INTEGER +
-					KEY_BPDIAS + INTEGER +
-					KEY_BPPATTERN + INTEGER +
-					KEY_OXYTO + INTEGER +
-					KEY_OXYPATTERN + INTEGER +
-					KEY_RESPTO + INTEGER +
-					KEY_RESPPATTERN + INTEGER +
-					KEY_CARBTO + INTEGER +
-					KEY_CARBPATTERN + INTEGER +
-					KEY_TIMESTAMP + INTEGER +
-					KEY_HEARTON + INTEGER +
-					KEY_BPON + INTEGER +
-					KEY_CUFFON + INTEGER +
-					KEY_OXYON + INTEGER +
-					KEY_CARBON + INTEGER +
-					KEY_RESPON + INTEGER +
-					KEY_SYNCTIMER + INTEGER +
-					KEY_FLAG + INTEGER +
-					KEY_TIMERSTATE + " INTEGER"+ ");";
-			SQLiteDatabase db = this.getWritableDatabase();
-			db.execSQL(CREATE_EVENTS_TABLE);
-			// And fill it.
-			ListIterator<Event> it = theScenario.getEventList().listIterator();
-			while (it.hasNext())
-				addEvent(it.next(), db, theScenario.getName());
-			db.close(); // Closing database connection
-			return 1;
-		} else
-			return -1;
+		SQLiteDatabase db = this.getWritableDatabase();
+		db.beginTransaction();
+		try {
+			// Add the Scenario, the name is unique.
+			ContentValues values = new ContentValues();
+			values.put(KEY_NAME, theScenario.getName());
+			values.put(KEY_RUNNABLE, (theScenario.isRunnable() ? 1 : 0));
+			long scenarioId = db.insertWithOnConflict(TABLE_SCENARIOS, null, values,
+					SQLiteDatabase.CONFLICT_IGNORE);
+			if (scenarioId == -1)
+				return -1;
+			// And add its events with one compiled statement.
+			List<Event> eventList = theScenario.getEventList();
+			if (eventList != null && !eventList.isEmpty()) {
+				SQLiteStatement insert = db.compileStatement(INSERT_EVENT);
+				try {
+					for (int seq = 0; seq < eventList.size(); seq++)
+						addEvent(eventList.get(seq), insert, scenarioId, seq);
+				} finally {
+					insert.close();
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return 1;
 	}
 	
 	/**
 	 * On create method.
 	 */
-	public void onCreate(SQLiteDatabase db) {}
+	public void onCreate(SQLiteDatabase db) {
+		createTables(db);
+	}
+
+	/**
+	 * On upgrade method, moves the scenarios of version 1 into the tables.
+	 */
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-		db.execSQL("DROP TABLE IF EXISTS " + _DATABASE_NAME);
-		onCreate(db);
+		if (oldVersion < 2) {
+			Map<String, String> renamed = renameCollidingTables(db);
+			createTables(db);
+			migrateLegacyScenarios(db, renamed);
+		}
 	}
 	
 	/**
-	 * On downgrade method.
+	 * On downgrade method, the newer tables are unknown, so start empty.
 	 */
 	public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-		onUpgrade(db, oldVersion, newVersion);
+		db.execSQL("DROP TABLE IF EXISTS " + TABLE_EVENTS);
+		db.execSQL("DROP TABLE IF EXISTS " + TABLE_SCENARIOS);
+		onCreate(db);
+	}
+	
+	/**
+	 * Deletes the legacy database once the migration is committed.
+	 */
+	@Override
+	public void onOpen(SQLiteDatabase db) {
+		if (_legacyMigrated) {
+			_legacyMigrated = false;
+			_context.deleteDatabase(LEGACY_DATABASE_NAME);
+		}
 	}
 	
 	/**
@@ -140,138 +195,366 @@ public class ScenarioHelper extends SQLiteOpenHelper {
 	 * @return the loaded scenario if successful, null if not.
 	 */
 	public Scenario loadScenario(String scenarioName) {
-		Scenario theScenario = null;
+		SQLiteDatabase db = this.getReadableDatabase();
+		Cursor cursor = db.query(TABLE_SCENARIOS,
+				new String[] {KEY_INDEX, KEY_RUNNABLE}, KEY_NAME + " = ?",
+				new String[] {scenarioName}, null, null, null);
+		long scenarioId;
+		boolean runnable;
+		try {
+			if (!cursor.moveToFirst())
+				return null;
+			scenarioId = cursor.getLong(0);
+			runnable = (cursor.getInt(1) != 0);
+		} finally {
+			cursor.close();
+		}
+		// Get all events in their order, the index covers the query.
 		List<Event> eventList = new ArrayList<Event>();
-		boolean badQuery = false;
-		// Select All Query, to get all events.
-		String selectQuery = "SELECT * FROM " + scenarioName;
-		SQLiteDatabase db = this.getWritableDatabase();
+		cursor = db.query(TABLE_EVENTS, EVENT_COLUMNS, KEY_SCENARIO + " = ?",
+				new String[] {Long.toString(scenarioId)}, null, null, KEY_SEQ);
 		try {
-			Cursor cursor = db.rawQuery(selectQuery, null);
-			// looping through all rows and adding the events to the list.
-			if (cursor.moveToFirst()) {
-				do {
-					Event event = new Event(cursor.getInt(1),				//TIME
-							cursor.getInt(2),								// HRTO
-							Scenario.intToHeartPattern(cursor.getInt(3)),	// HPATTERN
-							cursor.getInt(4),								// BPSYS
-							cursor.getInt(5),								// BPDIAS
-							Scenario.intToBpPattern(cursor.getInt(6)),		// BPPATTERN
-							cursor.getInt(7),								// OXYTO
-							Scenario.intToO2Pattern(cursor.getInt(8)),		// OXYPATTERN
-							cursor.getInt(9),								// RESPTO
-							Scenario.intToRespPattern(cursor.getInt(10)),	// RESPPATTERN
-							cursor.getInt(11),								// CARBTO
-							Scenario.intToCarbPattern(cursor.getInt(12)), 	// CARBPATTERN
-							cursor.getInt(13),								// TIMESTAMP
-							((cursor.getInt(14) == 1) ? true : false),		// HEARTON
-							((cursor.getInt(15) == 1) ? true : false),		// BPON
-							((cursor.getInt(16) == 1) ? true : false),		// CUFFON
-							((cursor.getInt(17) == 1) ? true : false),		// OXYON
-							((cursor.getInt(18) == 1) ? true : false),		// CARBON
-							((cursor.getInt(19) == 1) ? true : false),		// RESPON
-							((cursor.getInt(20) == 1) ? true : false),		// SYNCTIMER
-							((cursor.getInt(21) == 1) ? true : false),		// FLAG
-							Scenario.intToTimerState(cursor.getInt(22))); 	// TIMER STATE
-					eventList.add(event);
-				} while (cursor.moveToNext());
-			}
-			// Build a new scenario.
-			theScenario = new Scenario(scenarioName, true, eventList);
-			// Get the runnable for the scenario.
-			boolean runnable = scenarioDatabaseHelper.getRunnable(theScenario);
-			theScenario.setRunnable(runnable);
-			badQuery = false;
-		} catch(SQLException e) {
-			badQuery = true;
+			while (cursor.moveToNext())
+				eventList.add(readEvent(cursor, 0));
+		} finally {
+			cursor.close();
 		}
-		if (badQuery)
-			return null;
-		else 
-			return theScenario;
+		return new Scenario(scenarioName, runnable, eventList);
 	}
 
 	/**
 	 * Add an event to a scenario
 	 * @param e The event to add to a scenario
-	 * @param db The SQLite database
-	 * @param tableName The name of the scenario.
+	 * @param insert The compiled INSERT_EVENT statement, every argument is
+	 * bound again, so it can be reused for the next event.
+	 * @param scenarioId The row of the scenario.
+	 * @param seq The position of the event in the scenario.
 	 */
-	public static void addEvent(Event e, SQLiteDatabase db, String tableName) {  	 
-		// Put all the values of the event to the database.
-		ContentValues values = new ContentValues();
-		values.put(KEY_TIME, e._time);
-		values.put(KEY_HRTO, e._heartRateTo);
-		values.put(KEY_HEARTPATTERN, e._heartPattern.ordinal());
-		values.put(KEY_BPSYS, e._bloodPressureSys);
-		values.put(KEY_BPDIAS, e._bloodPressureDias);      
-		values.put(KEY_BPPATTERN, e._bpPattern.ordinal());
-		values.put(KEY_OXYTO, e._oxygenTo);
-		values.put(KEY_OXYPATTERN, e._oxyPattern.ordinal());
-		values.put(KEY_RESPTO,e._respRate);
-		values.put(KEY_RESPPATTERN, e._respPattern.ordinal());
-		values.put(KEY_CARBTO, e._carbTo);    
-		values.put(KEY_CARBPATTERN, e._carbPattern.ordinal());
-		values.put(KEY_TIMESTAMP, e._timeStamp);
-		values.put(KEY_HEARTON, (e._heartOn) ? 1 : 0);
-		values.put(KEY_BPON, (e._bpOn) ? 1 : 0);
-		values.put(KEY_CUFFON, (e._cuffOn) ? 1 : 0);
-		values.put(KEY_OXYON, (e._oxyOn) ? 1 : 0);
-		values.put(KEY_CARBON, (e._carbOn) ? 1 : 0);
-		values.put(KEY_RESPON, (e._respOn) ? 1 : 0);
-		values.put(KEY_SYNCTIMER, (e._syncTimer) ? 1 : 0);
-		values.put(KEY_FLAG, (e._flag) ? 1 : 0);
-		values.put(KEY_TIMERSTATE, e._timerState.ordinal());
-		db.insert(tableName, null, values);
+	public static void addEvent(Event e, SQLiteStatement insert, long scenarioId, int seq) {  	 
+		// Bind all the values of the event in the order of EVENT_COLUMNS.
+		insert.bindLong(1, scenarioId);
+		insert.bindLong(2, seq);
+		bindInteger(insert, 3, e._time);
+		bindInteger(insert, 4, e._heartRateTo);
+		insert.bindLong(5, e._heartPattern.ordinal());
+		bindInteger(insert, 6, e._bloodPressureSys);
+		bindInteger(insert, 7, e._bloodPressureDias);      
+		insert.bindLong(8, e._bpPattern.ordinal());
+		bindInteger(insert, 9, e._oxygenTo);
+		insert.bindLong(10, e._oxyPattern.ordinal());
+		bindInteger(insert, 11, e._respRate);
+		insert.bindLong(12, e._respPattern.ordinal());
+		bindInteger(insert, 13, e._carbTo);    
+		insert.bindLong(14, e._carbPattern.ordinal());
+		bindInteger(insert, 15, e._timeStamp);
+		insert.bindLong(16, (e._heartOn) ? 1 : 0);
+		insert.bindLong(17, (e._bpOn) ? 1 : 0);
+		insert.bindLong(18, (e._cuffOn) ? 1 : 0);
+		insert.bindLong(19, (e._oxyOn) ? 1 : 0);
+		insert.bindLong(20, (e._carbOn) ? 1 : 0);
+		insert.bindLong(21, (e._respOn) ? 1 : 0);
+		insert.bindLong(22, (e._syncTimer) ? 1 : 0);
+		insert.bindLong(23, (e._flag) ? 1 : 0);
+		insert.bindLong(24, e._timerState.ordinal());
+		insert.executeInsert();
+	}
+	
+	/**
+	 * Binds a value of an event, a missing value is stored as NULL.
+	 */
+	private static void bindInteger(SQLiteStatement insert, int index, Integer value) {
+		if (value == null)
+			insert.bindNull(index);
+		else
+			insert.bindLong(index, value);
 	}
 
 	/**
-	 * Returns all available scenarios.
+	 * Returns all available scenarios, without their events. The events are
+	 * read with getEventWindow() or loadScenario().
 	 * The true in the call determines the runnable value (true for scenario).
 	 * @return A List with all scenarios.
 	 */
 	public List<Scenario> getAllScenarios() {
-		return this.scenarioDatabaseHelper.getAllScenarios(this, true);
+		return getAllScenarios(true);
 	}
 
 	/**
-	 * Returns all available protocols.
+	 * Returns all available protocols, without their events.
 	 * The true in the call determines the runnable value (false for protocol).
 	 * @return A List with all scenarios.
 	 */
 	public List<Scenario> getAllProtocols() {
-		return this.scenarioDatabaseHelper.getAllScenarios(this, false);
+		return getAllScenarios(false);
 	}
 
 	/**
-	 * Deletes a scenario.
-	 * Drops the table here and deletes the entry in the ScenarioDatabase.
-	 */	public void deleteScenario(Scenario scenario) {
-		SQLiteDatabase db = this.getWritableDatabase();
-		db.execSQL("DROP TABLE IF EXISTS " + scenario.getName());
-		scenarioDatabaseHelper.deleteScenario(scenario);
+	 * Returns the events of a scenario as a list, which loads them page by
+	 * page while they are used.
+	 * @param scenario
+	 * @param loader Loads the pages of EventWindow.prefetch().
+	 * @return the events, an empty list if the scenario is not stored.
+	 */
+	public EventWindow getEventWindow(Scenario scenario, Executor loader) {
+		SQLiteDatabase db = this.getReadableDatabase();
+		Cursor cursor = db.rawQuery("SELECT " + KEY_INDEX + ", (SELECT COUNT(*) FROM "
+				+ TABLE_EVENTS + " WHERE " + KEY_SCENARIO + " = s." + KEY_INDEX
+				+ ") FROM " + TABLE_SCENARIOS + " s WHERE " + KEY_NAME + " = ?",
+				new String[] {scenario.getName()});
+		try {
+			if (!cursor.moveToFirst())
+				return new EventWindow(this, loader, -1, 0);
+			return new EventWindow(this, loader, cursor.getLong(0), cursor.getInt(1));
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Reads a part of the events of a scenario, used by the EventWindow.
+	 * @param scenarioId The row of the scenario.
+	 * @param first The SEQ of the first event.
+	 * @param count The number of events.
+	 * @return the events in their order.
+	 */
+	List<Event> loadEvents(long scenarioId, int first, int count) {
+		List<Event> eventList = new ArrayList<Event>(count);
+		SQLiteDatabase db = this.getReadableDatabase();
+		Cursor cursor = db.query(TABLE_EVENTS, EVENT_COLUMNS, KEY_SCENARIO + " = ? AND "
+				+ KEY_SEQ + " >= ? AND " + KEY_SEQ + " < ?", new String[] {
+				Long.toString(scenarioId), Integer.toString(first),
+				Integer.toString(first + count)}, null, null, KEY_SEQ);
+		try {
+			while (cursor.moveToNext())
+				eventList.add(readEvent(cursor, 0));
+		} finally {
+			cursor.close();
+		}
+		return eventList;
+	}
 
+	/**
+	 * Deletes a scenario and its events.
+	 */
+	public void deleteScenario(Scenario scenario) {
+		SQLiteDatabase db = this.getWritableDatabase();
+		String[] name = new String[] {scenario.getName()};
+		db.delete(TABLE_EVENTS, KEY_SCENARIO + " IN (SELECT " + KEY_INDEX
+				+ " FROM " + TABLE_SCENARIOS + " WHERE " + KEY_NAME + " = ?)", name);
+		db.delete(TABLE_SCENARIOS, KEY_NAME + " = ?", name);
 	}
 
 	/**
-	 * Delete all scenarios, meaning drop all tables in database. 
+	 * Delete all scenarios and protocols with their events.
 	 */
 	public void deleteAllScenarios() {
 		SQLiteDatabase db = this.getWritableDatabase();
-		List<Scenario> scenarios = getAllScenarios();
-		Iterator<Scenario> it = scenarios.iterator();
-		while(it.hasNext())
-			db.execSQL("DROP TABLE IF EXISTS " + it.next().getName());
-		// Clear the ScenarioDatabase.
-		scenarioDatabaseHelper.deleteAllScenarios();    	
+		db.delete(TABLE_EVENTS, null, null);
+		db.delete(TABLE_SCENARIOS, null, null);
 	}
 
 	/**
-	 * Change the runnable value. Calls the function in the scenario database.
+	 * Change the runnable value.
 	 * @param scenario
 	 */
 	public void setRunnableInDatabase(Scenario scenario) {
-		this.scenarioDatabaseHelper.setRunnableInDatabase(scenario);
+		SQLiteDatabase db = this.getWritableDatabase();
+		ContentValues values = new ContentValues();
+		values.put(KEY_RUNNABLE, (scenario.isRunnable() ? 1 : 0));
+		db.update(TABLE_SCENARIOS, values, KEY_NAME + " = ?",
+				new String[] {scenario.getName()});
+	}
+	
+	/**
+	 * Returns all scenarios or all protocols without their events, in the
+	 * order they were added.
+	 * @param isRunnable true for the scenarios, false for the protocols.
+	 * @return A List with the scenarios.
+	 */
+	private List<Scenario> getAllScenarios(boolean isRunnable) {
+		List<Scenario> scenarioList = new ArrayList<Scenario>();
+		SQLiteDatabase db = this.getReadableDatabase();
+		Cursor cursor = db.query(TABLE_SCENARIOS, new String[] {KEY_NAME},
+				KEY_RUNNABLE + " = ?", new String[] {isRunnable ? "1" : "0"},
+				null, null, KEY_INDEX);
+		try {
+			while (cursor.moveToNext())
+				scenarioList.add(new Scenario(cursor.getString(0), isRunnable,
+						new ArrayList<Event>()));
+		} finally {
+			cursor.close();
+		}
+		return scenarioList;
+	}
+	
+	/**
+	 * Creates an event from the EVENT_COLUMNS of a cursor.
+	 * @param cursor
+	 * @param first The index of the first of the EVENT_COLUMNS in the cursor.
+	 * @return the event.
+	 */
+	private static Event readEvent(Cursor cursor, int first) {
+		return new Event(cursor.getInt(first),							// TIME
+				cursor.getInt(first + 1),								// HRTO
+				Scenario.intToHeartPattern(cursor.getInt(first + 2)),	// HPATTERN
+				cursor.getInt(first + 3),								// BPSYS
+				cursor.getInt(first + 4),								// BPDIAS
+				Scenario.intToBpPattern(cursor.getInt(first + 5)),		// BPPATTERN
+				cursor.getInt(first + 6),								// OXYTO
+				Scenario.intToO2Pattern(cursor.getInt(first + 7)),		// OXYPATTERN
+				cursor.getInt(first + 8),								// RESPTO
+				Scenario.intToRespPattern(cursor.getInt(first + 9)),	// RESPPATTERN
+				cursor.getInt(first + 10),								// CARBTO
+				Scenario.intToCarbPattern(cursor.getInt(first + 11)), 	// CARBPATTERN
+				cursor.getInt(first + 12),								// TIMESTAMP
+				(cursor.getInt(first + 13) == 1),						// HEARTON
+				(cursor.getInt(first + 14) == 1),						// BPON
+				(cursor.getInt(first + 15) == 1),						// CUFFON
+				(cursor.getInt(first + 16) == 1),						// OXYON
+				(cursor.getInt(first + 17) == 1),						// CARBON
+				(cursor.getInt(first + 18) == 1),						// RESPON
+				(cursor.getInt(first + 19) == 1),						// SYNCTIMER
+				(cursor.getInt(first + 20) == 1),						// FLAG
+				Scenario.intToTimerState(cursor.getInt(first + 21))); 	// TIMER STATE
+	}
+	
+	/**
+	 * @return the INSERT statement of an event, SCENARIO_ID, SEQ and the
+	 * EVENT_COLUMNS as arguments.
+	 */
+	private static String insertEventSql() {
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(TABLE_EVENTS)
+				.append(" (").append(KEY_SCENARIO).append(", ").append(KEY_SEQ);
+		for (String column : EVENT_COLUMNS)
+			sql.append(", ").append(column);
+		sql.append(") VALUES (?, ?");
+		for (int i = 0; i < EVENT_COLUMNS.length; i++)
+			sql.append(", ?");
+		return sql.append(")").toString();
+	}
+	
+	/**
+	 * Creates the tables and their indexes.
+	 * @param db
+	 */
+	private static void createTables(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SCENARIOS + " ( " +
+				KEY_INDEX + " INTEGER PRIMARY KEY , " +
+				KEY_NAME + " TEXT NOT NULL UNIQUE, " +
+				KEY_RUNNABLE + " INTEGER" + ");");
+		db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_RUNNABLE + " ON "
+				+ TABLE_SCENARIOS + " (" + KEY_RUNNABLE + ");");
+		StringBuilder events = new StringBuilder("CREATE TABLE IF NOT EXISTS ")
+				.append(TABLE_EVENTS).append(" ( ")
+				.append(KEY_SCENARIO).append(" INTEGER NOT NULL REFERENCES ")
+				.append(TABLE_SCENARIOS).append(" (").append(KEY_INDEX).append("), ")
+				.append(KEY_SEQ).append(INTEGER);
+		for (int i = 0; i < EVENT_COLUMNS.length; i++)
+			events.append(' ').append(EVENT_COLUMNS[i])
+					.append(i < EVENT_COLUMNS.length - 1 ? INTEGER : " INTEGER");
+		events.append(");");
+		db.execSQL(events.toString());
+		db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_EVENTS + " ON "
+				+ TABLE_EVENTS + " (" + KEY_SCENARIO + ", " + KEY_SEQ + ");");
+	}
+	
+	/**
+	 * Renames the scenario tables of version 1 which have the name of a table
+	 * or index of version 2, e.g. a scenario called "Events". Table names are
+	 * not case sensitive, so CREATE TABLE IF NOT EXISTS would keep the old
+	 * table and the migration would drop the new one.
+	 * @param db
+	 * @return the new table names by the scenario names.
+	 */
+	private static Map<String, String> renameCollidingTables(SQLiteDatabase db) {
+		Map<String, String> renamed = new TreeMap<String, String>(
+				String.CASE_INSENSITIVE_ORDER);
+		String[] names = {TABLE_SCENARIOS, TABLE_EVENTS, INDEX_EVENTS, INDEX_RUNNABLE};
+		int suffix = 0;
+		for (String name : names) {
+			if (!tableExists(db, name))
+				continue;
+			String legacyName;
+			do {
+				legacyName = "LEGACY_" + name + "_" + suffix++;
+			} while (tableExists(db, legacyName));
+			db.execSQL("ALTER TABLE " + name + " RENAME TO " + legacyName);
+			renamed.put(name, legacyName);
+		}
+		return renamed;
+	}
+	
+	/**
+	 * @return true if the database has a table or index of that name, in any
+	 * case.
+	 */
+	private static boolean tableExists(SQLiteDatabase db, String name) {
+		Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE name = ?"
+				+ " COLLATE NOCASE", new String[] {name});
+		try {
+			return cursor.moveToFirst();
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	/**
+	 * Moves the scenarios of version 1 into the tables: the names and runnable
+	 * values come from the legacy database, the events from the table of each
+	 * scenario, which is dropped afterwards. Runs in the transaction of the
+	 * upgrade, so nothing is lost if it fails.
+	 * @param db
+	 * @param renamed The tables moved aside by renameCollidingTables().
+	 */
+	private void migrateLegacyScenarios(SQLiteDatabase db, Map<String, String> renamed) {
+		if (!_context.getDatabasePath(LEGACY_DATABASE_NAME).exists())
+			return;
+		SQLiteDatabase legacy = SQLiteDatabase.openDatabase(
+				_context.getDatabasePath(LEGACY_DATABASE_NAME).getPath(), null,
+				SQLiteDatabase.OPEN_READONLY);
+		Cursor cursor;
+		try {
+			cursor = legacy.rawQuery("SELECT " + KEY_NAME + ", " + KEY_RUNNABLE
+					+ " FROM " + LEGACY_DATABASE_NAME + " ORDER BY " + KEY_INDEX, null);
+		} catch (SQLException e) {
+			// No scenario was ever stored.
+			legacy.close();
+			return;
+		}
+		StringBuilder columns = new StringBuilder();
+		for (String column : EVENT_COLUMNS)
+			columns.append(", ").append(column);
+		try {
+			while (cursor.moveToNext()) {
+				// The name was used as table name, e.g. "[18/10/2026_14:03:22]"
+				// is the quoted name of a protocol table.
+				String name = cursor.getString(0);
+				String table = renamed.containsKey(name) ? renamed.get(name) : name;
+				ContentValues values = new ContentValues();
+				values.put(KEY_NAME, name);
+				values.put(KEY_RUNNABLE, cursor.getInt(1));
+				long scenarioId = db.insertWithOnConflict(TABLE_SCENARIOS, null,
+						values, SQLiteDatabase.CONFLICT_IGNORE);
+				if (scenarioId == -1)
+					continue;
+				try {
+					// The old rows were only ever appended, they are numbered
+					// from 1 in the order they were added.
+					db.execSQL("INSERT INTO " + TABLE_EVENTS + " (" + KEY_SCENARIO
+							+ ", " + KEY_SEQ + columns + ") SELECT " + scenarioId
+							+ ", " + KEY_INDEX + " - 1" + columns + " FROM " + table);
+					db.execSQL("DROP TABLE IF EXISTS " + table);
+				} catch (SQLException e) {
+					// The table is missing or broken, like loadScenario() of
+					// version 1 the scenario is left out.
+					db.delete(TABLE_SCENARIOS, KEY_INDEX + " = " + scenarioId, null);
+				}
+			}
+		} finally {
+			cursor.close();
+			legacy.close();
+		}
+		_legacyMigrated = true;
 	}
 
 }
@@ -0,0 +1,330 @@
+/**
+ * Asynchronous access to the stored scenarios.
+ * University Freiburg
+ */
+package Scenario;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Runs all accesses to the ScenarioHelper on one background thread, so the
+ * UI thread never waits for the database while a scenario is running.
+ * There is one repository for the process (get()), the thread and the
+ * caches live as long as the process, however often the activities are
+ * created again.
+ *
+ * Every method returns at once with a Future of its result. If a callback
+ * is given, it gets the result on the UI thread. The accesses are done in
+ * the order they were called, a list read after a delete never contains
+ * the deleted scenario. If an access fails, the error is logged and the
+ * callback is not called.
+ *
+ * The lists of the scenarios and of the protocols are cached and dropped
+ * by every write. The events of the last MAX_OPEN_SCENARIOS chosen
+ * scenarios are kept open, so switching back to one of them needs no
+ * query, and the events of its pages in memory are not read again. An
+ * open scenario is dropped when it is added, deleted or changed. The
+ * caches are only used by the background thread.
+ *
+ * The events are shared by all users of an open scenario and must not be
+ * changed, an event to be sent with other values is copied first.
+ */
+public final class ScenarioRepository {
+
+	/**
+	 * Receives the result of an access on the UI thread.
+	 */
+	public interface Callback<T> {
+		void onResult(T result);
+	}
+
+	// Scenarios whose events are kept open.
+	static final int MAX_OPEN_SCENARIOS = 4;
+
+	private static final String TAG = "ScenarioRepository";
+
+	// The repository of the process, opened by the first get().
+	private static ScenarioRepository _instance = null;
+
+	private final ScenarioHelper _helper;
+	private final ExecutorService _executor = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ScenarioDatabase");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	// Delivers the results on the UI thread.
+	private final Handler _uiHandler = new Handler(Looper.getMainLooper());
+
+	// The cached lists, null if they have to be read.
+	private List<Scenario> _scenarios = null;
+	private List<Scenario> _protocols = null;
+	// The open scenarios by name, in the order of their last use.
+	private final LinkedHashMap<String, EventWindow> _windows =
+			new LinkedHashMap<String, EventWindow>(MAX_OPEN_SCENARIOS + 1, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, EventWindow> eldest) {
+					return size() > MAX_OPEN_SCENARIOS;
+				}
+			};
+
+	// Statistics
+	private volatile int _listCacheHits = 0;
+	private volatile int _listCacheMisses = 0;
+	private volatile int _scenarioCacheHits = 0;
+	private volatile int _scenarioCacheMisses = 0;
+
+	/**
+	 * Constructor, see get().
+	 * @param helper The database of the scenarios.
+	 */
+	private ScenarioRepository(ScenarioHelper helper) {
+		_helper = helper;
+	}
+
+	/**
+	 * Returns the repository of the process and opens it on the first call.
+	 * @param context Only its application context is kept.
+	 */
+	public static synchronized ScenarioRepository get(Context context) {
+		if (_instance == null)
+			_instance = new ScenarioRepository(new ScenarioHelper(
+					context.getApplicationContext()));
+		return _instance;
+	}
+
+	/**
+	 * Reads all scenarios, without their events.
+	 * @param callback May be null.
+	 */
+	public Future<List<Scenario>> getAllScenarios(Callback<List<Scenario>> callback) {
+		return submit(new Callable<List<Scenario>>() {
+			public List<Scenario> call() {
+				if (_scenarios == null) {
+					_listCacheMisses++;
+					_scenarios = _helper.getAllScenarios();
+				} else {
+					_listCacheHits++;
+				}
+				return copy(_scenarios);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Reads all protocols, without their events.
+	 * @param callback May be null.
+	 */
+	public Future<List<Scenario>> getAllProtocols(Callback<List<Scenario>> callback) {
+		return submit(new Callable<List<Scenario>>() {
+			public List<Scenario> call() {
+				if (_protocols == null) {
+					_listCacheMisses++;
+					_protocols = _helper.getAllProtocols();
+				} else {
+					_listCacheHits++;
+				}
+				return copy(_protocols);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Reads a scenario with all its events.
+	 * @param callback Gets null if the scenario is not stored, may be null.
+	 */
+	public Future<Scenario> loadScenario(final String scenarioName,
+			Callback<Scenario> callback) {
+		return submit(new Callable<Scenario>() {
+			public Scenario call() {
+				return _helper.loadScenario(scenarioName);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Opens the events of a scenario, which are then loaded page by page,
+	 * or returns them if the scenario is still open. The pages for
+	 * EventWindow.prefetch() are loaded by the thread of the repository as
+	 * well.
+	 * @param callback May be null.
+	 */
+	public Future<EventWindow> getEventWindow(final Scenario scenario,
+			Callback<EventWindow> callback) {
+		return submit(new Callable<EventWindow>() {
+			public EventWindow call() {
+				EventWindow window = _windows.get(scenario.getName());
+				if (window == null) {
+					_scenarioCacheMisses++;
+					window = _helper.getEventWindow(scenario, _executor);
+					_windows.put(scenario.getName(), window);
+				} else {
+					_scenarioCacheHits++;
+				}
+				return window;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Stores a scenario. The events recorded so far are copied, the list of
+	 * the scenario may go on growing.
+	 * @param callback Gets 1 if successful, -1 if the name already exists and
+	 * 0 if the database failed, may be null.
+	 */
+	public Future<Integer> addScenario(Scenario theScenario, Callback<Integer> callback) {
+		List<Event> eventList = theScenario.getEventList();
+		final Scenario scenario = new Scenario(theScenario.getName(),
+				theScenario.isRunnable(), (eventList == null) ? new ArrayList<Event>()
+						: new ArrayList<Event>(eventList));
+		return submit(new Callable<Integer>() {
+			public Integer call() {
+				try {
+					return _helper.addScenario(scenario);
+				} catch (SQLException e) {
+					Log.e(TAG, "Could not store " + scenario.getName(), e);
+					return 0;
+				} finally {
+					invalidate(scenario.getName());
+				}
+			}
+		}, callback);
+	}
+
+	/**
+	 * Deletes a scenario and its events.
+	 * @param callback May be null.
+	 */
+	public Future<Void> deleteScenario(final Scenario scenario, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			public Void call() {
+				try {
+					_helper.deleteScenario(scenario);
+				} finally {
+					invalidate(scenario.getName());
+				}
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Stores the runnable value of a scenario.
+	 * @param callback May be null.
+	 */
+	public Future<Void> setRunnableInDatabase(Scenario scenario, Callback<Void> callback) {
+		final Scenario changed = new Scenario(scenario.getName(), scenario.isRunnable());
+		return submit(new Callable<Void>() {
+			public Void call() {
+				try {
+					_helper.setRunnableInDatabase(changed);
+				} finally {
+					invalidate(changed.getName());
+				}
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * @return How often a list was served from the cache.
+	 */
+	public int getListCacheHits() {
+		return _listCacheHits;
+	}
+
+	/**
+	 * @return How often a list had to be read from the database.
+	 */
+	public int getListCacheMisses() {
+		return _listCacheMisses;
+	}
+
+	/**
+	 * @return How often the events of an open scenario were returned.
+	 */
+	public int getScenarioCacheHits() {
+		return _scenarioCacheHits;
+	}
+
+	/**
+	 * @return How often the events of a scenario had to be opened.
+	 */
+	public int getScenarioCacheMisses() {
+		return _scenarioCacheMisses;
+	}
+
+	/**
+	 * Runs an access on the thread of the repository.
+	 */
+	private <T> Future<T> submit(Callable<T> call, final Callback<T> callback) {
+		FutureTask<T> task = new FutureTask<T>(call) {
+			@Override
+			protected void done() {
+				final T result;
+				try {
+					result = get();
+				} catch (InterruptedException e) {
+					return;
+				} catch (ExecutionException e) {
+					Log.e(TAG, "Database access failed", e.getCause());
+					return;
+				} catch (CancellationException e) {
+					return;
+				}
+				if (callback == null)
+					return;
+				_uiHandler.post(new Runnable() {
+					public void run() {
+						callback.onResult(result);
+					}
+				});
+			}
+		};
+		_executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Drops the cached lists and the open scenario after a write.
+	 * @param scenarioName The written scenario.
+	 */
+	private void invalidate(String scenarioName) {
+		_scenarios = null;
+		_protocols = null;
+		_windows.remove(scenarioName);
+	}
+
+	/**
+	 * The callers may change the scenarios (setRunnable()), so they get
+	 * copies of the cached ones.
+	 */
+	private static List<Scenario> copy(List<Scenario> scenarios) {
+		List<Scenario> copy = new ArrayList<Scenario>(scenarios.size());
+		for (Scenario scenario : scenarios)
+			copy.add(new Scenario(scenario.getName(), scenario.isRunnable(),
+					new ArrayList<Event>()));
+		return copy;
+	}
+}
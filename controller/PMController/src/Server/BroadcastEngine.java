@@ -0,0 +1,433 @@
+/**
+ * @since   18.10.2026
+ *
+ */
+
+package Server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Scenario.Event;
+import Scenario.EventCodec;
+
+/**
+ * <h1>Broadcast Engine</h1> Selector based, non-blocking fan-out of messages
+ * to every connected Monitor. Each connection owns a bounded outbound queue
+ * which is drained by a single selector thread. A Monitor that does not keep
+ * up with its queue (e.g. bad Wi-Fi) is evicted, so it can not delay the
+ * delivery of events to the other Monitors.
+ *
+ * A connection starts in JSON mode. If the Monitor sends the EventCodec
+ * HELLO line it is switched to the binary frames of the EventCodec. Its first
+ * binary frame is always a keyframe, whatever the other connections get.
+ *
+ * The engine has no Android dependencies and can be driven headlessly
+ * against loopback sockets.
+ *
+ */
+class BroadcastEngine implements Runnable {
+
+	// default number of messages a connection may have outstanding
+	static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Selector selector;
+	private final int queueCapacity;
+
+	// channels accepted by the Server Thread, registered by selector thread
+	private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<SocketChannel>();
+	// all live connections
+	private final List<Connection> connections = new CopyOnWriteArrayList<Connection>();
+	// scratch buffer for incoming data (HELLO line or closed connections)
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(256);
+
+	private Thread selectorThread;
+	private volatile boolean running = false;
+
+	// statistics
+	private final AtomicLong messagesBroadcast = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	// -- GETTER --
+
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	public long getMessagesBroadcast() {
+		return messagesBroadcast.get();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return true if at least one connection negotiated binary frames
+	 */
+	public boolean hasBinaryConnections() {
+		for (Connection connection : connections) {
+			if (connection.binary) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if at least one connection still uses JSON
+	 */
+	public boolean hasJsonConnections() {
+		for (Connection connection : connections) {
+			if (!connection.binary) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// -- END GETTER --
+
+	/**
+	 * CONSTRUCTOR Opens the selector, the engine has to be started with
+	 * start() afterwards
+	 *
+	 * @param queueCapacity
+	 *            maximal number of outstanding messages per connection before
+	 *            the connection is evicted
+	 * @throws IOException
+	 *             if the selector could not be opened
+	 */
+	BroadcastEngine(int queueCapacity) throws IOException {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("queueCapacity < 1");
+		}
+		this.queueCapacity = queueCapacity;
+		this.selector = Selector.open();
+	}
+
+	/**
+	 * Starts the selector thread
+	 */
+	synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		selectorThread = new Thread(this, "BroadcastEngine");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/**
+	 * Stops the selector thread and closes every connection
+	 */
+	synchronized void shutdown() {
+		running = false;
+		selector.wakeup();
+		if (selectorThread != null) {
+			try {
+				selectorThread.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			selectorThread = null;
+		}
+	}
+
+	/**
+	 * Hands an accepted channel over to the engine. May be called from any
+	 * thread.
+	 *
+	 * @param channel
+	 *            connected channel of a Monitor
+	 */
+	void register(SocketChannel channel) {
+		pendingChannels.add(channel);
+		selector.wakeup();
+	}
+
+	/**
+	 * Queues a message for every connected Monitor without blocking the
+	 * caller. The message is encoded only once and terminated by a newline.
+	 *
+	 * @param message
+	 *            message (JSON-String) to send
+	 */
+	void broadcast(String message) {
+		broadcast(textFrame(message), null, null);
+	}
+
+	/**
+	 * Queues already encoded frames for every connected Monitor without
+	 * blocking the caller. Each connection gets the frame of its negotiated
+	 * format, or the other one if that is missing. A binary connection which
+	 * has not yet received a keyframe gets one instead of a delta frame.
+	 *
+	 * @param textFrame
+	 *            newline terminated JSON message, may be null
+	 * @param binaryFrame
+	 *            EventCodec frame, may be null
+	 * @param keyframeEvent
+	 *            event of the binary frame if it is a delta frame, encoded
+	 *            as keyframe for the connections which need one; null if the
+	 *            binary frame is a keyframe
+	 */
+	void broadcast(ByteBuffer textFrame, ByteBuffer binaryFrame,
+			Event keyframeEvent) {
+		ByteBuffer sharedText = textFrame == null ? null : textFrame
+				.asReadOnlyBuffer();
+		ByteBuffer sharedBinary = binaryFrame == null ? null : binaryFrame
+				.asReadOnlyBuffer();
+		ByteBuffer sharedKeyframe = keyframeEvent == null ? sharedBinary : null;
+		boolean wakeup = false;
+		for (Connection connection : connections) {
+			// read binary before needsKeyframe, the selector thread sets
+			// them in the opposite order
+			boolean binary = connection.binary;
+			ByteBuffer frame = binary ? sharedBinary : sharedText;
+			if (frame != null && binary && connection.needsKeyframe) {
+				if (sharedKeyframe == null) {
+					sharedKeyframe = EventCodec.encodeFrame(keyframeEvent,
+							EventCodec.ALL_FIELDS).asReadOnlyBuffer();
+				}
+				frame = sharedKeyframe;
+				connection.needsKeyframe = false;
+			}
+			if (frame == null) {
+				frame = binary ? sharedText : sharedBinary;
+			}
+			if (frame != null) {
+				boolean wasEvicted = connection.evicted;
+				// the selector thread flushes the frame, or closes and counts
+				// the connection if this frame evicted it
+				if (connection.enqueue(frame.duplicate()) || !wasEvicted) {
+					wakeup = true;
+				}
+			}
+		}
+		messagesBroadcast.incrementAndGet();
+		if (wakeup) {
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * @return the message encoded as newline terminated UTF-8 frame
+	 */
+	static ByteBuffer textFrame(String message) {
+		return ByteBuffer.wrap((message + "\n").getBytes(UTF8));
+	}
+
+	public void run() {
+		try {
+			while (running) {
+				selector.select();
+				registerPendingChannels();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					Connection connection = (Connection) key.attachment();
+					if (key.isValid() && key.isReadable()) {
+						read(connection);
+					}
+				}
+				// flush every connection: new data may have been queued
+				// without the channel being selected
+				for (Connection connection : connections) {
+					flush(connection);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Caught IOException: " + e.getMessage());
+		} finally {
+			for (Connection connection : connections) {
+				close(connection);
+			}
+			SocketChannel channel;
+			while ((channel = pendingChannels.poll()) != null) {
+				closeQuietly(channel);
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				System.err.println("Caught IOException: " + e.getMessage());
+			}
+		}
+	}
+
+	private void registerPendingChannels() {
+		SocketChannel channel;
+		while ((channel = pendingChannels.poll()) != null) {
+			try {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				Connection connection = new Connection(channel, queueCapacity);
+				connection.key = channel.register(selector,
+						SelectionKey.OP_READ, connection);
+				connections.add(connection);
+			} catch (ClosedChannelException e) {
+				closeQuietly(channel);
+			} catch (IOException e) {
+				System.err.println("Caught IOException: " + e.getMessage());
+				closeQuietly(channel);
+			}
+		}
+	}
+
+	/**
+	 * Writes as much of the queued data as the socket accepts. Only the
+	 * selector thread writes to channels.
+	 */
+	private void flush(Connection connection) {
+		if (connection.evicted) {
+			evictions.incrementAndGet();
+			close(connection);
+			return;
+		}
+		try {
+			while (true) {
+				if (connection.current == null) {
+					connection.current = connection.queue.poll();
+					if (connection.current == null) {
+						break;
+					}
+				}
+				int written = connection.channel.write(connection.current);
+				bytesWritten.addAndGet(written);
+				if (connection.current.hasRemaining()) {
+					// socket buffer is full, wait for OP_WRITE
+					break;
+				}
+				connection.current = null;
+			}
+			int ops = SelectionKey.OP_READ;
+			if (connection.current != null) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+			if (connection.key.interestOps() != ops) {
+				connection.key.interestOps(ops);
+			}
+		} catch (IOException e) {
+			close(connection);
+		}
+	}
+
+	/**
+	 * Reads what the Monitor sent: the only message so far is the HELLO line
+	 * to switch to binary frames. Detects closed connections.
+	 */
+	private void read(Connection connection) {
+		try {
+			readBuffer.clear();
+			if (connection.channel.read(readBuffer) < 0) {
+				close(connection);
+				return;
+			}
+			readBuffer.flip();
+			while (readBuffer.hasRemaining()) {
+				connection.receive(readBuffer.get());
+			}
+		} catch (IOException e) {
+			close(connection);
+		}
+	}
+
+	private void close(Connection connection) {
+		connections.remove(connection);
+		connection.queue.clear();
+		if (connection.key != null) {
+			connection.key.cancel();
+		}
+		closeQuietly(connection.channel);
+	}
+
+	private static void closeQuietly(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// nothing left to do
+		}
+	}
+
+	/**
+	 * State of a single Monitor connection
+	 */
+	private static class Connection {
+
+		final SocketChannel channel;
+		final ArrayBlockingQueue<ByteBuffer> queue;
+		SelectionKey key;
+		// partially written frame, only touched by the selector thread
+		ByteBuffer current;
+		// set by broadcasting thread if the queue overflowed
+		volatile boolean evicted = false;
+		// set by selector thread after the HELLO line arrived
+		volatile boolean binary = false;
+		// set by selector thread before binary, cleared by the broadcasting
+		// thread when the connection got its first binary keyframe
+		volatile boolean needsKeyframe = false;
+		// current incoming line, only touched by the selector thread
+		private final StringBuilder line = new StringBuilder();
+
+		Connection(SocketChannel channel, int capacity) {
+			this.channel = channel;
+			this.queue = new ArrayBlockingQueue<ByteBuffer>(capacity);
+		}
+
+		/**
+		 * @return false if the connection is (now) evicted
+		 */
+		boolean enqueue(ByteBuffer frame) {
+			if (evicted) {
+				return false;
+			}
+			if (!queue.offer(frame)) {
+				evicted = true;
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Collects incoming bytes to lines and checks them for the HELLO
+		 * 
+		 * @return true if the connection switched to binary frames
+		 */
+		boolean receive(byte b) {
+			boolean switched = false;
+			if (b == '\n') {
+				if (!binary && EventCodec.HELLO.equals(line.toString().trim())) {
+					needsKeyframe = true;
+					binary = true;
+					switched = true;
+				}
+				line.setLength(0);
+			} else if (line.length() < 64) {
+				line.append((char) (b & 0xFF));
+			}
+			return switched;
+		}
+	}
+}
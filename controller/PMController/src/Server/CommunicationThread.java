@@ -9,19 +9,34 @@ package Server;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.Socket;
-import java.net.UnknownHostException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * <h1>Communication Thread</h1> Every Monitor connecting to Server gets its own
  * Communication Thread to communicate to Controller and vice versa using
  * out()-method or (not used yet) in()-method
  * 
+ * The thread owns one long-lived writer on the socket and drains a bounded
+ * queue filled by out(). While nothing is queued the thread is parked on the
+ * queue. Used by the Server instead of the Broadcast Engine if
+ * Server.USE_BROADCAST_ENGINE is switched off.
+ * 
  */
 class CommunicationThread extends Thread {
 
+	// maximal number of queued messages before the Monitor is dropped
+	static final int QUEUE_CAPACITY = 64;
+
 	// given socket connection of Server
 	private final Socket socket;
+	// messages waiting to be sent, filled by out()
+	private final BlockingQueue<String> outQueue = new LinkedBlockingQueue<String>(
+			QUEUE_CAPACITY);
+	// number of messages written to the socket
+	private volatile long sentMessages = 0;
 
 	// if new message is ready to send
 	private boolean newMessage = true;
@@ -50,6 +65,10 @@ class CommunicationThread extends Thread {
 		this.newMessage = newMessage;
 	}
 
+	public long getSentMessages() {
+		return sentMessages;
+	}
+
 	// -- END GETTER / SETTER --
 
 	/**
@@ -62,11 +81,36 @@ class CommunicationThread extends Thread {
 	 * 
 	 */
 	CommunicationThread(Socket socket) {
+		super("CommunicationThread");
 		this.socket = socket;
+		setDaemon(true);
 	}
 
+	/**
+	 * Send loop: blocks on the queue while idle and writes every message with
+	 * the same writer. Messages queued in the meantime are written before the
+	 * writer is flushed once.
+	 */
 	public void run() {
-		while (!Thread.currentThread().isInterrupted()) {
+		Writer writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(
+					socket.getOutputStream(), "UTF-8"));
+			while (!Thread.currentThread().isInterrupted()) {
+				String jsonString = outQueue.take();
+				do {
+					writer.write(jsonString);
+					writer.write('\n');
+					sentMessages++;
+				} while ((jsonString = outQueue.poll()) != null);
+				writer.flush();
+			}
+		} catch (InterruptedException e) {
+			// shutdown requested
+		} catch (IOException e) {
+			System.err.println("Caught IOException: " + e.getMessage());
+		} finally {
+			close();
 		}
 	}
 
@@ -85,28 +129,35 @@ class CommunicationThread extends Thread {
 
 	/**
 	 * 
-	 * Sends JSON-String to Monitor using BufferedWriter and given Socket
-	 * connection
+	 * Queues JSON-String for the Monitor, the send loop writes it to the
+	 * given Socket connection. Does not block the caller, if the Monitor does
+	 * not keep up and the queue is full the connection is closed.
 	 * 
 	 * @param jsonString
 	 *            JSON-String is build by GSON Builder, send to Monitor
-	 * @throws IOException
-	 *             exceptions for Socket, flush or writer Errors
 	 * 
 	 */
-	void out(String jsonString) throws IOException {
-		try {
+	void out(String jsonString) {
+		if (!outQueue.offer(jsonString)) {
+			System.err.println("Monitor too slow, closing connection");
+			shutdown();
+		}
+	}
+
+	/**
+	 * Stops the send loop and closes the socket connection
+	 */
+	void shutdown() {
+		interrupt();
+		close();
+	}
 
-			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
-					socket.getOutputStream()));
-			writer.write(jsonString + "\n");
-			writer.flush();
-		} catch (UnknownHostException e) {
-			e.printStackTrace();
+	private void close() {
+		outQueue.clear();
+		try {
+			socket.close();
 		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (Exception e) {
-			e.printStackTrace();
+			// already closed
 		}
 	}
 }
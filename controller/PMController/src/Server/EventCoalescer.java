@@ -0,0 +1,159 @@
+/**
+ * @since   18.10.2026
+ *
+ */
+
+package Server;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import Scenario.Event;
+import Scenario.Event.TimerState;
+
+/**
+ * <h1>Event Coalescer</h1> Outbound stage between the UI and Server.out().
+ * Dragging a slider produces many events per second, every event is a full
+ * snapshot of all parameters, so only the latest one of a window has to be
+ * sent. The first event after an idle period is sent at once, events
+ * arriving during the window replace each other and the last one is sent
+ * when the window closes. Events carrying a command (timer state, timer
+ * sync, flag) are never dropped.
+ *
+ */
+class EventCoalescer {
+
+	// default length of the coalescing window in ms
+	static final long DEFAULT_WINDOW = 30;
+
+	private final Server server;
+	private final ScheduledExecutorService executor;
+	private volatile long window;
+
+	// latest event waiting for the end of the window, guarded by this
+	private Event pending = null;
+	private boolean windowOpen = false;
+
+	// statistics
+	private long submittedEvents = 0;
+	private long sentEvents = 0;
+
+	private final Runnable flushTask = new Runnable() {
+		public void run() {
+			flush();
+		}
+	};
+
+	// -- GETTER / SETTER --
+
+	public long getWindow() {
+		return window;
+	}
+
+	public void setWindow(long window) {
+		this.window = window;
+	}
+
+	public synchronized long getSubmittedEvents() {
+		return submittedEvents;
+	}
+
+	public synchronized long getSentEvents() {
+		return sentEvents;
+	}
+
+	// -- END GETTER / SETTER --
+
+	/**
+	 * CONSTRUCTOR
+	 *
+	 * @param server
+	 *            Server to send the events with
+	 * @param window
+	 *            length of the coalescing window in ms
+	 */
+	EventCoalescer(Server server, long window) {
+		this.server = server;
+		this.window = window;
+		this.executor = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "EventCoalescer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Hands an event over for sending. The event must not be modified
+	 * afterwards.
+	 *
+	 * @param event
+	 *            Event to send
+	 */
+	synchronized void submit(Event event) {
+		submittedEvents++;
+		if (window <= 0) {
+			send(event);
+			return;
+		}
+		if (isCommand(event)) {
+			// keep the order: older state first, then the command
+			if (pending != null) {
+				send(pending);
+				pending = null;
+			}
+			send(event);
+			openWindow();
+		} else if (!windowOpen) {
+			send(event);
+			openWindow();
+		} else {
+			pending = event;
+		}
+	}
+
+	/**
+	 * Sends the pending event (if any) and stops the executor
+	 */
+	synchronized void shutdown() {
+		if (pending != null) {
+			send(pending);
+			pending = null;
+		}
+		executor.shutdownNow();
+	}
+
+	/**
+	 * End of a window: sends the latest pending event and opens the next
+	 * window, or goes idle if nothing arrived
+	 */
+	private synchronized void flush() {
+		windowOpen = false;
+		if (pending != null) {
+			send(pending);
+			pending = null;
+			openWindow();
+		}
+	}
+
+	private void openWindow() {
+		if (!windowOpen && !executor.isShutdown()) {
+			windowOpen = true;
+			executor.schedule(flushTask, window, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void send(Event event) {
+		sentEvents++;
+		server.out(event);
+	}
+
+	private static boolean isCommand(Event event) {
+		return event._syncTimer || event._flag
+				|| (event._timerState != null && event._timerState != TimerState.RUN);
+	}
+}
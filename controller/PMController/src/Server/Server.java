@@ -9,8 +9,13 @@ package Server;
 import gui.MainActivity;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import android.content.Context;
 import android.net.nsd.NsdManager;
@@ -18,22 +23,41 @@ import android.net.nsd.NsdServiceInfo;
 import android.net.nsd.NsdManager.RegistrationListener;
 import android.util.Log;
 
-import Server.CommunicationThread;
+import Scenario.Event;
+import Scenario.EventCodec;
 
 /**
  * <h1>Server (Server Socket)</h1>
- * Every Server holds a Server Thread and a CommunicationThread
- * to communicate over TCP and JSON with its out()-Method to a Monitor
+ * Every Server holds a Server Thread accepting Monitors and a Broadcast Engine
+ * to communicate over TCP and JSON with its out()-Method to all Monitors
  * 
  */
 public class Server {
 
+	// Use the selector based Broadcast Engine, otherwise every Monitor gets
+	// its own CommunicationThread
+	static final boolean USE_BROADCAST_ENGINE = true;
+
+	private ServerSocketChannel serverChannel;
 	private ServerSocket serverSocket;
 	private Thread serverThread = null;
-	private CommunicationThread commThread;
 
-	// List of CommunicationThreads
-	private ArrayList<CommunicationThread> commThreads = new ArrayList<CommunicationThread>();
+	// non-blocking fan-out to every connected Monitor
+	private BroadcastEngine broadcastEngine;
+
+	// Binary events only carry the fields changed since the last sent event,
+	// every KEYFRAME_INTERVAL events or KEYFRAME_PERIOD ms a full keyframe
+	private static final int KEYFRAME_INTERVAL = 50;
+	private static final long KEYFRAME_PERIOD = 5000;
+	private Event lastSentEvent = null;
+	private int eventsSinceKeyframe = 0;
+	private long lastKeyframeTime = 0;
+
+	// coalesces high-frequency events of the UI (slider drags)
+	private EventCoalescer eventCoalescer;
+
+	// List of CommunicationThreads (if Broadcast Engine is not used)
+	private List<CommunicationThread> commThreads = new CopyOnWriteArrayList<CommunicationThread>();
 
 	// Different debugging tags for LogCat
 	private final String tagST = "ServerThread";
@@ -68,6 +92,15 @@ public class Server {
 		return controllerPort;
 	}
 
+	/**
+	 * @param window
+	 *            length of the coalescing window of outCoalesced() in ms, 0
+	 *            sends every event
+	 */
+	public void setCoalesceWindow(long window) {
+		eventCoalescer.setWindow(window);
+	}
+
 	// -- End GETTER / SETTER --
 
 	/**
@@ -80,6 +113,17 @@ public class Server {
 	 */
 	public Server(String serviceName) {
 		this.serviceName = serviceName;
+		this.eventCoalescer = new EventCoalescer(this,
+				EventCoalescer.DEFAULT_WINDOW);
+		if (USE_BROADCAST_ENGINE) {
+			try {
+				this.broadcastEngine = new BroadcastEngine(
+						BroadcastEngine.DEFAULT_QUEUE_CAPACITY);
+				this.broadcastEngine.start();
+			} catch (IOException e) {
+				Log.e(tagS, "Could not start broadcast engine: " + e.getMessage());
+			}
+		}
 		this.serverThread = new Thread(new ServerThread());
 		this.serverThread.start();
 	}
@@ -88,36 +132,111 @@ public class Server {
 	 * Interrupts Thread and closes Server Socket connection
 	 */
 	public void tearDownServer() {
+		eventCoalescer.shutdown();
 		serverThread.interrupt();
 		try {
-			serverSocket.close();
+			if (serverChannel != null) {
+				serverChannel.close();
+			}
 		} catch (IOException ioe) {
 			Log.e(tagS, "Error when closing server socket.");
 		}
+		if (broadcastEngine != null) {
+			broadcastEngine.shutdown();
+		}
+		for (CommunicationThread commThread : commThreads) {
+			commThread.shutdown();
+		}
+		commThreads.clear();
 	}
 
 	/**
 	 * 
-	 * Sends JSONstring to every Monitor over its socket connection
-	 * (CommunicationThread)
+	 * Sends JSONstring to every Monitor over its socket connection. The
+	 * message is only queued, so the caller (mostly the UI thread) is never
+	 * blocked by a slow Monitor
 	 * 
 	 * @param jsonString
 	 *            JSON-String created by an event before sending
 	 * 
 	 */
 	public void out(String jsonString) {
+		Log.d(tagS, "Controller sends: " + jsonString);
+		if (broadcastEngine != null) {
+			broadcastEngine.broadcast(jsonString);
+			return;
+		}
+		if (commThreads.isEmpty()) {
+			Log.d(tagS, "No Communiction Handler initialized");
+			return;
+		}
 		for (CommunicationThread commThread : commThreads) {
-			try {
-				if (commThread == null) {
-					Log.d(tagS, "No Communiction Handler initialized");
-					return;
-				}
-				Log.d(tagS, "Controller sends: " + jsonString);
+			if (commThread.isAlive()) {
 				commThread.out(jsonString);
-			} catch (IOException e) {
-				System.err.println("Caught IOException: " + e.getMessage());
+			} else {
+				commThreads.remove(commThread);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * Sends an Event to every Monitor. Monitors which negotiated the binary
+	 * EventCodec get the compact frame, all others the JSON-String. Every
+	 * format is only encoded if a Monitor needs it. Binary frames are delta
+	 * encoded against the last sent event with periodic keyframes, a Monitor
+	 * which just switched to binary frames gets a keyframe from the engine
+	 * 
+	 * @param event
+	 *            Event to send
+	 * 
+	 */
+	public synchronized void out(Event event) {
+		if (broadcastEngine == null) {
+			out(event.toJson());
+			return;
+		}
+		ByteBuffer binaryFrame = null;
+		Event keyframeEvent = null;
+		if (broadcastEngine.hasBinaryConnections()) {
+			long now = System.currentTimeMillis();
+			int fields;
+			if (lastSentEvent == null
+					|| eventsSinceKeyframe >= KEYFRAME_INTERVAL
+					|| now - lastKeyframeTime >= KEYFRAME_PERIOD) {
+				fields = EventCodec.ALL_FIELDS;
+				eventsSinceKeyframe = 0;
+				lastKeyframeTime = now;
+			} else {
+				fields = EventCodec.changedFields(lastSentEvent, event);
+				eventsSinceKeyframe++;
+				keyframeEvent = event;
 			}
+			binaryFrame = EventCodec.encodeFrame(event, fields);
+		}
+		// the event objects are modified and resent by the activities
+		lastSentEvent = new Event(event);
+		ByteBuffer textFrame = null;
+		if (binaryFrame == null || broadcastEngine.hasJsonConnections()) {
+			String jsonString = event.toJson();
+			Log.d(tagS, "Controller sends: " + jsonString);
+			textFrame = BroadcastEngine.textFrame(jsonString);
 		}
+		broadcastEngine.broadcast(textFrame, binaryFrame, keyframeEvent);
+	}
+
+	/**
+	 * 
+	 * Sends an Event of a high-frequency source (e.g. a slider drag). Within
+	 * the coalescing window only the latest Event is sent, so the network and
+	 * the Monitors are not flooded
+	 * 
+	 * @param event
+	 *            Event to send, must not be modified afterwards
+	 * 
+	 */
+	public void outCoalesced(Event event) {
+		eventCoalescer.submit(event);
 	}
 
 	/**
@@ -133,7 +252,9 @@ public class Server {
 		public void run() {
 			try {
 				// Initialize a server socket on port: controllerPort
-				serverSocket = new ServerSocket(controllerPort);
+				serverChannel = ServerSocketChannel.open();
+				serverSocket = serverChannel.socket();
+				serverSocket.bind(new InetSocketAddress(controllerPort));
 			} catch (Exception e) {
 				System.err.println("Caught IOException: " + e.getMessage());
 			}
@@ -143,12 +264,18 @@ public class Server {
 
 			while (!Thread.currentThread().isInterrupted()) {
 				try {
-					// starts Communication Thread for every new client
-					// connecting to Server
-					commThread = (new CommunicationThread(serverSocket.accept()));
+					// hands every new client connecting to Server over to
+					// the Broadcast Engine or starts its Communication Thread
+					SocketChannel channel = serverChannel.accept();
 					Log.d(tagST, "Client connected");
-					commThreads.add(commThread);
-					commThread.start();
+					if (broadcastEngine != null) {
+						broadcastEngine.register(channel);
+					} else {
+						CommunicationThread commThread = new CommunicationThread(
+								channel.socket());
+						commThreads.add(commThread);
+						commThread.start();
+					}
 					Log.d(tagST, "Connection Handler started");
 				} catch (IOException e1) {
 					System.err
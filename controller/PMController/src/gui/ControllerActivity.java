@@ -20,7 +20,7 @@ import java.util.List;
 import Scenario.Event;
 import Scenario.Event.TimerState;
 import Scenario.Scenario;
-import Scenario.ScenarioHelper;
+import Scenario.ScenarioRepository;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -136,7 +136,7 @@ public class ControllerActivity extends Activity {
 	// DATABASE for scenario and protocoll
 	List<Event> eventList_scenario = null;
 	List<Event> eventList_protocoll = null;
-	ScenarioHelper scenarioHelper = null;
+	ScenarioRepository scenarioRepository = null;
 	
 	
 	/*
@@ -193,8 +193,8 @@ public class ControllerActivity extends Activity {
 		// Disable apply and dismiss buttons at first
 		disableButtons();
 		
-		// Open scenario data base
-		scenarioHelper = new ScenarioHelper(getBaseContext());
+		// Scenario data base of the process, it is accessed in the background
+		scenarioRepository = ScenarioRepository.get(getBaseContext());
 	}
 
 	
@@ -306,12 +306,12 @@ public class ControllerActivity extends Activity {
 			return true;
 			// If protocol icon pressed, open protocol activity
 		} else if (id == R.id.action_protocoll) {
-			ProtocollActivity._scenarioHelper = scenarioHelper;
+			ProtocollActivity._scenarioRepository = scenarioRepository;
 			startActivity (new Intent (this, ProtocollActivity.class));
 			return true;
 		// If scenario pressed, open scenario activity
 		} else if (id == R.id.action_scenario) {
-			ScenarioActivity._scenarioHelper = scenarioHelper;
+			ScenarioActivity._scenarioRepository = scenarioRepository;
 			startActivity (new Intent (this, ScenarioActivity.class));
 			return true;
 		}
@@ -491,7 +491,7 @@ public class ControllerActivity extends Activity {
 		// Send to Server if it was not just a flag
 		if (!flag) {
 			if (MainActivity.server != null) {
-				MainActivity.server.out(event.toJson().toString());
+				MainActivity.server.outCoalesced(event);
 			} else {
 				if (MainActivity.CHECK_WIFI) {
 					// Show connection alert
@@ -733,7 +733,7 @@ public class ControllerActivity extends Activity {
     /*
      * Store the Scenario
      */
-    private void storeScenario(String value, boolean runnable) {
+    private void storeScenario(final String value, boolean runnable) {
     	// Display toasti
     	if (SHOW_STORE_TOAST) {
         	String message = "Saved Scenario under name: ";
@@ -749,33 +749,42 @@ public class ControllerActivity extends Activity {
     	// Add the event list to the scenario.
     	scenario.setEventList(eventList_scenario);
     	
-    	// Write in Database
-    	int error = scenarioHelper.addScenario(scenario);
-    	
-    	// If name already exists, open a new prompt
-    	if (error == -1) {
-    		final boolean runble = runnable;
-    		// Open an alert dialog where the new name of the scenario should be entered
-    		final EditText input = new EditText(this);
-    		new AlertDialog.Builder(this, AlertDialog.THEME_DEVICE_DEFAULT_DARK)
-    			    .setTitle(getResources().getString(R.string.scenario_alert_title_name_already_exists1) + value.toString() 
-    			    		+ getResources().getString(R.string.scenario_alert_title_name_already_exists2))
-    			    .setView(input)
-    			    // If Save button is pressed on the alert dialog
-    			    .setPositiveButton(getResources().getString(R.string.scenario_alert_positive_button2), new DialogInterface.OnClickListener() {
-    			        public void onClick(DialogInterface dialog, int whichButton) {
-    					        	// Get the typed name
-    					        	Editable value = input.getText();
-    					        	// Store all progress so far
-    					        	storeScenario(value.toString(), runble);
-    					        }
-    			            }).setNegativeButton(getResources().getString(R.string.scenario_alert_negative_button), new DialogInterface.OnClickListener() {
-    					        public void onClick(DialogInterface dialog, int whichButton) {
-    					            // Delete all progress
-    				        		eventList_scenario = null;
-    					        }
-    					    }).show();
-    	}
+    	// Write in Database, in the background
+    	final boolean runble = runnable;
+    	scenarioRepository.addScenario(scenario, new ScenarioRepository.Callback<Integer>() {
+    		public void onResult(Integer result) {
+    	    	// If name already exists, open a new prompt
+    	    	if (result == -1 && !isFinishing()) {
+    	    		showNameExistsDialog(value, runble);
+    	    	}
+    		}
+    	});
+    }
+    
+    /*
+     * Ask for a new name if the name of the scenario already exists
+     */
+    private void showNameExistsDialog(String value, final boolean runble) {
+		// Open an alert dialog where the new name of the scenario should be entered
+		final EditText input = new EditText(this);
+		new AlertDialog.Builder(this, AlertDialog.THEME_DEVICE_DEFAULT_DARK)
+			    .setTitle(getResources().getString(R.string.scenario_alert_title_name_already_exists1) + value.toString() 
+			    		+ getResources().getString(R.string.scenario_alert_title_name_already_exists2))
+			    .setView(input)
+			    // If Save button is pressed on the alert dialog
+			    .setPositiveButton(getResources().getString(R.string.scenario_alert_positive_button2), new DialogInterface.OnClickListener() {
+			        public void onClick(DialogInterface dialog, int whichButton) {
+					        	// Get the typed name
+					        	Editable value = input.getText();
+					        	// Store all progress so far
+					        	storeScenario(value.toString(), runble);
+					        }
+			            }).setNegativeButton(getResources().getString(R.string.scenario_alert_negative_button), new DialogInterface.OnClickListener() {
+					        public void onClick(DialogInterface dialog, int whichButton) {
+					            // Delete all progress
+				        		eventList_scenario = null;
+					        }
+					    }).show();
     }
     
     /*
@@ -809,8 +818,8 @@ public class ControllerActivity extends Activity {
     	// Add the event list to the scenario.
     	scenario.setEventList(eventList_protocoll);
     	
-    	// Write in Database
-    	scenarioHelper.addScenario(scenario);
+    	// Write in Database, in the background
+    	scenarioRepository.addScenario(scenario, null);
     }
     
   
@@ -17,8 +17,9 @@ import java.util.List;
 
 import Scenario.Event;
 import Scenario.EventAdapter;
+import Scenario.EventWindow;
 import Scenario.Scenario;
-import Scenario.ScenarioHelper;
+import Scenario.ScenarioRepository;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Intent;
@@ -49,13 +50,15 @@ public class ProtocollActivity extends Activity {
 	private static final boolean AUTO_HIDE_ACTIVE = false;
 	// If hiding was initialized don't hide again
 	private boolean WILL_HIDE = false;	
-	public static ScenarioHelper _scenarioHelper;
+	public static ScenarioRepository _scenarioRepository;
 	public static EventAdapter _eventAdapter;
 	public static List<Scenario> _currentScenarios;
-	public static List<Event> _currentEvents;
+	public static EventWindow _currentEvents;
 	public static Scenario _currentScenario;
 	public static Event _currentEvent;
 	public static Integer _currentPositionEvent;
+	// Counts the requests of events, only the window of the last one is shown.
+	private int _eventRequest = 0;
 	public static ListView listViewScenario;
 	public static ListView listViewEvents;
 
@@ -108,7 +111,6 @@ public class ProtocollActivity extends Activity {
 					int position, long arg3) {
 				Scenario chosenScenario = (Scenario)adapter.getItemAtPosition(position);
 				_currentScenario = chosenScenario;
-				_currentEvents = chosenScenario.getEventList();
 				readEventsToList(chosenScenario);
 			}
 		});
@@ -214,13 +216,18 @@ public class ProtocollActivity extends Activity {
 	 * @author Johannes
 	 */
 	public void readScenariosToList() {
-		_currentScenarios = _scenarioHelper.getAllProtocols();
-		try {
-			ListAdapter adapter2 = new ArrayAdapter<Scenario>(getApplicationContext(),
-					R.layout.my_simple_list_item_1, _currentScenarios);
-			ListView listViewScenario = (ListView)findViewById(R.id.listViewScenario);
-			listViewScenario.setAdapter(adapter2);
-		} finally {}		
+		// The list is read in the background.
+		_scenarioRepository.getAllProtocols(new ScenarioRepository.Callback<List<Scenario>>() {
+			public void onResult(List<Scenario> scenarios) {
+				if (isFinishing())
+					return;
+				_currentScenarios = scenarios;
+				ListAdapter adapter2 = new ArrayAdapter<Scenario>(getApplicationContext(),
+						R.layout.my_simple_list_item_1, _currentScenarios);
+				ListView listViewScenario = (ListView)findViewById(R.id.listViewScenario);
+				listViewScenario.setAdapter(adapter2);
+			}
+		});
 	}
 
 	/**
@@ -228,12 +235,23 @@ public class ProtocollActivity extends Activity {
 	 * @author Johannes
 	 */
 	public void readEventsToList(Scenario chosenScenario) {
-		// Get the events from the chosen scenario.
-		Event[] eventList = (Event[])chosenScenario.getEventList().toArray(new Event[0]);
-		_eventAdapter = new EventAdapter(this, R.layout.event_item, eventList);
-		ListView listViewEvents = (ListView)findViewById(R.id.listViewEvents);
-		listViewEvents.setAdapter(_eventAdapter);
-		_currentPositionEvent = 0;
+		// Get the events from the chosen scenario in the background, they are
+		// loaded page by page while the list scrolls.
+		final int request = ++_eventRequest;
+		_scenarioRepository.getEventWindow(chosenScenario,
+				new ScenarioRepository.Callback<EventWindow>() {
+			public void onResult(EventWindow events) {
+				// Drop them if another scenario was chosen or deleted meanwhile.
+				if (request != _eventRequest || isFinishing())
+					return;
+				_currentEvents = events;
+				_eventAdapter = new EventAdapter(ProtocollActivity.this, R.layout.event_item,
+						_currentEvents);
+				ListView listViewEvents = (ListView)findViewById(R.id.listViewEvents);
+				listViewEvents.setAdapter(_eventAdapter);
+				_currentPositionEvent = 0;
+			}
+		});
 	}
 
 	/**
@@ -241,6 +259,8 @@ public class ProtocollActivity extends Activity {
 	 * @author Johannes
 	 */
 	public void clearEventList() {
+		// A window which is still being read is not shown anymore.
+		_eventRequest++;
 		ListView listViewEvents = (ListView)findViewById(R.id.listViewEvents);
 		listViewEvents.setAdapter(null);
 	}
@@ -251,7 +271,7 @@ public class ProtocollActivity extends Activity {
 	 * @param view
 	 * @author Johannes
 	 */	public void deleteScenario(View view) {
-		 _scenarioHelper.deleteScenario(_currentScenario);
+		 _scenarioRepository.deleteScenario(_currentScenario, null);
 		 readScenariosToList();
 		 clearEventList();
 	 }
@@ -265,7 +285,7 @@ public class ProtocollActivity extends Activity {
 	 public void applyPressedScenario(View view) {
 
 		 // Send to Server
-		 MainActivity.server.out(_currentEvent.toJson().toString());
+		 MainActivity.server.out(_currentEvent);
 	 }
 
 	 /**
@@ -313,7 +333,7 @@ public class ProtocollActivity extends Activity {
 	 public void changeToScenario(View view) {
 		 if (_currentScenario != null) {
 			 _currentScenario.setRunnable(!_currentScenario.isRunnable());
-			 _scenarioHelper.setRunnableInDatabase(_currentScenario);
+			 _scenarioRepository.setRunnableInDatabase(_currentScenario, null);
 			 readScenariosToList();
 			 clearEventList();
 		 }
@@ -18,8 +18,9 @@ import java.util.List;
 import Scenario.Event;
 import Scenario.Event.TimerState;
 import Scenario.EventAdapter;
+import Scenario.EventWindow;
 import Scenario.Scenario;
-import Scenario.ScenarioHelper;
+import Scenario.ScenarioRepository;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Intent;
@@ -53,10 +54,10 @@ public class ScenarioActivity extends Activity {
 	private static final boolean AUTO_HIDE_ACTIVE = false;
 	// If hiding was initialized don't hide again
 	private boolean WILL_HIDE = false;	
-	public static ScenarioHelper _scenarioHelper;
+	public static ScenarioRepository _scenarioRepository;
 	public static EventAdapter _eventAdapter;
 	public static List<Scenario> _currentScenarios;
-	public static List<Event> _currentEvents;
+	public static EventWindow _currentEvents;
 	public static Scenario _currentScenario;
 	public static Event _currentEvent;
 	public static Integer _currentPositionEvent = 0;
@@ -66,6 +67,8 @@ public class ScenarioActivity extends Activity {
 	private static boolean _scenarioPaused = false;
 	private Handler _scenarioHandler;
 	private int _timeInSec = 0;
+	// Counts the requests of events, only the window of the last one is shown.
+	private int _eventRequest = 0;
 
 	/*
 	 * (non-Javadoc)
@@ -121,7 +124,6 @@ public class ScenarioActivity extends Activity {
 				//v.setSelected(true);
 				Scenario chosenScenario = (Scenario)adapter.getItemAtPosition(position);
 				_currentScenario = chosenScenario;
-				_currentEvents = chosenScenario.getEventList();
 				readEventsToList(chosenScenario);
 			}
 		});
@@ -137,9 +139,10 @@ public class ScenarioActivity extends Activity {
 				_currentPositionEvent = position;
 				_currentEvent = chosenEvent;	
 				_timeInSec = _currentEvent._timeStamp;
-				// Sync the timer.
-				_currentEvent._syncTimer = true;
-				MainActivity.server.out(_currentEvent.toJson());					
+				// Sync the timer, with a copy as the stored events are shared.
+				Event syncEvent = new Event(_currentEvent);
+				syncEvent._syncTimer = true;
+				MainActivity.server.out(syncEvent);					
 			}
 		});
 	}
@@ -233,13 +236,18 @@ public class ScenarioActivity extends Activity {
 	 * @author Johannes
 	 */
 	public void readScenariosToList() {
-		_currentScenarios = _scenarioHelper.getAllScenarios();
-		try {
-			ListAdapter adapter2 = new ArrayAdapter<Scenario>(getApplicationContext(),
-					R.layout.my_simple_list_item_1, _currentScenarios);
-			ListView listViewScenario = (ListView)findViewById(R.id.listViewScenario);
-			listViewScenario.setAdapter(adapter2);
-		} finally {}		
+		// The list is read in the background.
+		_scenarioRepository.getAllScenarios(new ScenarioRepository.Callback<List<Scenario>>() {
+			public void onResult(List<Scenario> scenarios) {
+				if (isFinishing())
+					return;
+				_currentScenarios = scenarios;
+				ListAdapter adapter2 = new ArrayAdapter<Scenario>(getApplicationContext(),
+						R.layout.my_simple_list_item_1, _currentScenarios);
+				ListView listViewScenario = (ListView)findViewById(R.id.listViewScenario);
+				listViewScenario.setAdapter(adapter2);
+			}
+		});
 	}
 
 	/**
@@ -249,11 +257,22 @@ public class ScenarioActivity extends Activity {
 	 * @author Johannes
 	 */
 	public void readEventsToList(Scenario chosenScenario) {
-		// Get the events from the chosen scenario.
-		Event[] eventList = (Event[])chosenScenario.getEventList().toArray(new Event[0]);
-		_eventAdapter = new EventAdapter(this, R.layout.event_item, eventList);
-		ListView listViewEvents = (ListView)findViewById(R.id.listViewEvents);
-		listViewEvents.setAdapter(_eventAdapter);		
+		// Get the events from the chosen scenario in the background, they are
+		// loaded page by page while the list scrolls.
+		final int request = ++_eventRequest;
+		_scenarioRepository.getEventWindow(chosenScenario,
+				new ScenarioRepository.Callback<EventWindow>() {
+			public void onResult(EventWindow events) {
+				// Drop them if another scenario was chosen or deleted meanwhile.
+				if (request != _eventRequest || isFinishing())
+					return;
+				_currentEvents = events;
+				_eventAdapter = new EventAdapter(ScenarioActivity.this, R.layout.event_item,
+						_currentEvents);
+				ListView listViewEvents = (ListView)findViewById(R.id.listViewEvents);
+				listViewEvents.setAdapter(_eventAdapter);
+			}
+		});
 	}
 
 	/**
@@ -261,6 +280,8 @@ public class ScenarioActivity extends Activity {
 	 * @author Johannes
 	 */
 	public void clearEventList() {
+		// A window which is still being read is not shown anymore.
+		_eventRequest++;
 		ListView listViewEvents = (ListView)findViewById(R.id.listViewEvents);
 		listViewEvents.setAdapter(null);
 	}
@@ -274,7 +295,7 @@ public class ScenarioActivity extends Activity {
 	public void deleteScenario(View view) {
 		if (_scenarioRunning)
 			stopScenario();
-		_scenarioHelper.deleteScenario(_currentScenario);
+		_scenarioRepository.deleteScenario(_currentScenario, null);
 		readScenariosToList();
 		clearEventList();
 	}
@@ -287,7 +308,7 @@ public class ScenarioActivity extends Activity {
 	 */
 	public void applyPressedScenario(View view) {
 		// Send to Server
-		MainActivity.server.out(_currentEvent.toJson().toString());
+		MainActivity.server.out(_currentEvent);
 	}
 
 	/**
@@ -319,6 +340,8 @@ public class ScenarioActivity extends Activity {
 				&& !_scenarioRunning) {		
 			_currentEvent = (Event) listViewEvents
 					.getItemAtPosition(_currentPositionEvent);
+			// Load the next events before they are due.
+			_currentEvents.prefetch(_currentPositionEvent);
 			/*
 			 * Get the first events from the current scenario and send them to
 			 * the monitor.
@@ -328,13 +351,15 @@ public class ScenarioActivity extends Activity {
 			int firstTimestamp = _currentEvent._timeStamp;
 			while (_currentEvent._timeStamp == firstTimestamp) {
 				// Start the timer on the Monitor again
+				Event event = _currentEvent;
 				if (_scenarioPaused) {
-					_currentEvent._timerState = TimerState.START;
+					event = new Event(_currentEvent);
+					event._timerState = TimerState.START;
 					_scenarioPaused = false;
 				}
 				// Send the event only if it is not a flag.
-				if (!_currentEvent._flag)
-					MainActivity.server.out(_currentEvent.toJson().toString());				
+				if (!event._flag)
+					MainActivity.server.out(event);				
 				listViewEvents.setItemChecked(_currentPositionEvent, true);
 				_currentPositionEvent++;
 				if (_currentPositionEvent < _currentEvents.size() - 1) {
@@ -357,6 +382,8 @@ public class ScenarioActivity extends Activity {
 						updateTime(); // Update the GUI.
 					if (_currentEvents != null
 							&& _currentPositionEvent != null) {
+						// Load the next events before they are due.
+						_currentEvents.prefetch(_currentPositionEvent);
 						// If the timer equals the timestamp of the next event
 						// and the event is not a flag, send it to the monitor.
 						if (_timeInSec == _currentEvent._timeStamp) {
@@ -366,8 +393,7 @@ public class ScenarioActivity extends Activity {
 								if (!_currentEvent._flag)
 									listViewEvents.setItemChecked(
 											_currentPositionEvent, true);
-								MainActivity.server.out(_currentEvent
-										.toJson().toString());
+								MainActivity.server.out(_currentEvent);
 								if (DEBUG)
 									System.out.println("Sent Event");
 								// Stop the timer and reset the variables.								
@@ -379,8 +405,7 @@ public class ScenarioActivity extends Activity {
 								// same time stamp occur.
 								int currentTimestamp = _currentEvent._timeStamp;
 								while (currentTimestamp == _currentEvent._timeStamp) {
-									MainActivity.server.out(_currentEvent
-											.toJson().toString());
+									MainActivity.server.out(_currentEvent);
 									if (DEBUG)
 										System.out.println("Sent Event");
 									if (!_currentEvent._flag)
@@ -436,8 +461,9 @@ public class ScenarioActivity extends Activity {
 		// Send last Event to pause the timer on the monitor.
 		_currentEvent = (Event) listViewEvents
 				.getItemAtPosition(_currentPositionEvent);
-		_currentEvent._timerState = TimerState.PAUSE;
-		MainActivity.server.out(_currentEvent.toJson());
+		Event pauseEvent = new Event(_currentEvent);
+		pauseEvent._timerState = TimerState.PAUSE;
+		MainActivity.server.out(pauseEvent);
 		_scenarioPaused = true;
 	}
 
@@ -495,7 +521,7 @@ public class ScenarioActivity extends Activity {
 	public void changeToProtocol(View view) {
 		if (_currentScenario != null) {
 			_currentScenario.setRunnable(!_currentScenario.isRunnable());
-			_scenarioHelper.setRunnableInDatabase(_currentScenario);
+			_scenarioRepository.setRunnableInDatabase(_currentScenario, null);
 			readScenariosToList();
 			clearEventList();
 		}
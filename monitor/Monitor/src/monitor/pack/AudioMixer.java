@@ -0,0 +1,353 @@
+/*
+ * Copyright: Universitt Freiburg, 2015
+ */
+
+package monitor.pack;
+
+/**
+ * A software mixer for the generated sounds of the monitor. One thread sums the playing voices into a
+ * fixed-size block of 16 bit mono PCM samples and writes it to a single output-stream, so beeps and alarms
+ * no longer need an AudioTrack or a timer-thread of their own. 
+ * A voice can be scheduled to a point in time, it is then heard a constant delay after that time. So a beep
+ * lines up with the R-peak sample of the SignalEngine, no matter when the sampling thread got to it. 
+ * Voices have a priority: an alarm of a higher priority mutes the lower alarms and every alarm ducks the beeps.
+ * The class has no Android dependencies, the stream is given as an Output.
+ */
+final class AudioMixer implements Runnable {
+	
+	
+  // PUBLIC:
+	
+	// The priorities of the voices, a higher one wins.
+	static final int PRIORITY_BEEP = 0;
+	static final int PRIORITY_ALARM = 1;
+	static final int PRIORITY_ASYSTOLE = 2;
+	// The number of samples mixed at once.
+	static final int BLOCK_SIZE = 256;
+	
+	/**
+	 * The stream the mixed samples are written to.
+	 */
+	interface Output {
+		/**
+		 * Writes samples to the stream, blocks until they are queued for playback.
+		 *
+		 *@param samples - The samples.
+		 *@param count - The number of samples to write.
+		 */
+		void write(short[] samples, int count);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param output - The stream the samples are written to.
+	 * @param sampleRate - The sampling-rate of the stream and the tones.
+	 * @param bufferSize - The number of samples the stream buffers.
+	 */
+	AudioMixer(Output output, int sampleRate, int bufferSize) {
+		_output = output;
+		_sampleRate = sampleRate;
+		_bufferSize = bufferSize;
+		// A scheduled voice is started after the buffer of the stream and two blocks, so it is never late
+		// if it is scheduled within a block after its time.
+		_delay = bufferSize + 2 * BLOCK_SIZE;
+		for (int i = 0; i < _voices.length; i++) {
+			_voices[i] = new Voice();
+		}
+		for (int i = 0; i < _loops.length; i++) {
+			_loops[i] = new Loop();
+		}
+	}
+	
+	/**
+	 * Starts the mixer-thread.
+	 */
+	synchronized void start() {
+		if (_thread != null) {
+			return;
+		}
+		_running = true;
+		// Sample 0 is heard once the buffer of the stream is played.
+		_anchorFrame = 0;
+		_anchorTime = System.nanoTime() + framesToNanos(_bufferSize);
+		_thread = new Thread(this, "AudioMixer");
+		_thread.setDaemon(true);
+		_thread.setPriority(Thread.MAX_PRIORITY);
+		_thread.start();
+	}
+	
+	/**
+	 * Stops the mixer-thread and waits until it doesn't write to the stream any more.
+	 */
+	void stop() {
+		Thread thread;
+		synchronized (this) {
+			_running = false;
+			thread = _thread;
+			_thread = null;
+		}
+		if (thread != null) {
+			try {
+				thread.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Plays a tone once, as soon as possible.
+	 *
+	 *@param tone - The samples of the tone, they must not be changed.
+	 *@param priority - The priority of the voice.
+	 */
+	synchronized void play(short[] tone, int priority) {
+		startVoice(tone, priority, _mixedFrames);
+	}
+	
+	/**
+	 * Plays a tone once, a constant delay after the given time.
+	 *
+	 *@param tone - The samples of the tone, they must not be changed.
+	 *@param priority - The priority of the voice.
+	 *@param time - The time of the event which triggers the tone (System.nanoTime()).
+	 */
+	synchronized void play(short[] tone, int priority, long time) {
+		long frame = _anchorFrame + nanosToFrames(time - _anchorTime) + _delay;
+		if (frame < _mixedFrames) {
+			// Too late for the constant delay, start it with the next block.
+			_lateVoices++;
+			frame = _mixedFrames;
+		}
+		startVoice(tone, priority, frame);
+	}
+	
+	/**
+	 * Repeats a tone, or two tones in turns, until stopLoop() is called. There is one loop per priority, 
+	 * a running loop of the same priority is replaced. The first tone is played after one interval.
+	 *
+	 *@param priority - The priority of the voices.
+	 *@param first - The first tone.
+	 *@param second - The second tone, or null to repeat only the first one.
+	 *@param interval - The time between the start of two tones in ms.
+	 */
+	synchronized void startLoop(int priority, short[] first, short[] second, int interval) {
+		Loop loop = _loops[priority];
+		loop.tones[0] = first;
+		loop.tones[1] = second != null ? second : first;
+		loop.next = 0;
+		loop.interval = (long) interval * _sampleRate / 1000;
+		loop.nextFrame = _mixedFrames + loop.interval;
+		loop.active = true;
+	}
+	
+	/**
+	 * Stops repeating the tones of a priority, a tone which is playing is finished.
+	 *
+	 *@param priority - The priority of the loop.
+	 */
+	synchronized void stopLoop(int priority) {
+		_loops[priority].active = false;
+	}
+	
+	/**
+	 * Mixes and outputs the blocks until the mixer is stopped. The stream paces the thread.
+	 */
+	public void run() {
+		while (_running) {
+			mix();
+			_output.write(_block, BLOCK_SIZE);
+			long now = System.nanoTime();
+			synchronized (this) {
+				_mixedFrames += BLOCK_SIZE;
+				// Normally the stream buffers _bufferSize samples ahead of the time. If it ran empty or the
+				// clock of the stream runs away from System.nanoTime(), set the time of the samples anew.
+				long lead = _mixedFrames - (_anchorFrame + nanosToFrames(now - _anchorTime));
+				if (lead < 0 || lead > _bufferSize + 2 * BLOCK_SIZE) {
+					_anchorFrame = _mixedFrames - _bufferSize;
+					_anchorTime = now;
+					_reanchors++;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return The number of samples mixed so far.
+	 */
+	synchronized long getMixedFrames() {
+		return _mixedFrames;
+	}
+	
+	/**
+	 * @return The number of voices which were dropped, because all voices were busy with higher priorities.
+	 */
+	synchronized long getDroppedVoices() {
+		return _droppedVoices;
+	}
+	
+	/**
+	 * @return The number of scheduled voices which started later than their time and the delay.
+	 */
+	synchronized long getLateVoices() {
+		return _lateVoices;
+	}
+	
+	/**
+	 * @return The number of times the stream ran empty or its clock drifted.
+	 */
+	synchronized long getReanchors() {
+		return _reanchors;
+	}
+	
+	
+  // PRIVATE:
+	
+	/**
+	 * A tone which is played from a given sample on.
+	 */
+	private static final class Voice {
+		short[] tone;
+		long start;  // The sample the tone starts at.
+		int priority;
+		boolean active;
+	}
+	
+	/**
+	 * Repeated tones of one priority.
+	 */
+	private static final class Loop {
+		final short[][] tones = new short[2][];
+		int next;  // The index of the next tone.
+		long interval;  // The samples between the start of two tones.
+		long nextFrame;  // The sample the next tone starts at.
+		boolean active;
+	}
+	
+	/**
+	 * Takes a free voice, or the lowest voice of at most the same priority, and starts a tone with it.
+	 */
+	private void startVoice(short[] tone, int priority, long start) {
+		Voice voice = null;
+		for (int i = 0; i < _voices.length; i++) {
+			Voice v = _voices[i];
+			if (!v.active) {
+				voice = v;
+				break;
+			}
+			if (v.priority <= priority && (voice == null || v.priority < voice.priority
+					|| (v.priority == voice.priority && v.start < voice.start))) {
+				voice = v;
+			}
+		}
+		if (voice == null) {
+			_droppedVoices++;
+			return;
+		}
+		voice.tone = tone;
+		voice.start = start;
+		voice.priority = priority;
+		voice.active = true;
+	}
+	
+	/**
+	 * Mixes the next block into _block.
+	 */
+	private synchronized void mix() {
+		final long begin = _mixedFrames;
+		final long end = begin + BLOCK_SIZE;
+		// Start the tones of the loops which begin in this block.
+		for (int p = 0; p < _loops.length; p++) {
+			Loop loop = _loops[p];
+			while (loop.active && loop.nextFrame < end) {
+				startVoice(loop.tones[loop.next], p, loop.nextFrame);
+				loop.next ^= 1;
+				loop.nextFrame += loop.interval;
+			}
+		}
+		// The highest priority which sounds in this block.
+		int top = PRIORITY_BEEP;
+		for (int i = 0; i < _voices.length; i++) {
+			Voice v = _voices[i];
+			if (v.active && v.start < end && v.priority > top) {
+				top = v.priority;
+			}
+		}
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			_sum[i] = 0;
+		}
+		for (int i = 0; i < _voices.length; i++) {
+			Voice v = _voices[i];
+			if (!v.active || v.start >= end) {
+				continue;
+			}
+			int from = (int) Math.max(0, v.start - begin);
+			int pos = (int) (begin + from - v.start);
+			int count = Math.min(BLOCK_SIZE - from, v.tone.length - pos);
+			if (v.priority == top) {
+				for (int j = 0; j < count; j++) {
+					_sum[from + j] += v.tone[pos + j];
+				}
+			} else if (v.priority == PRIORITY_BEEP) {
+				// Beeps are ducked to the half volume under an alarm.
+				for (int j = 0; j < count; j++) {
+					_sum[from + j] += v.tone[pos + j] >> 1;
+				}
+			}
+			// A lower alarm is muted, but goes on in time.
+			if (pos + count >= v.tone.length) {
+				v.active = false;
+				v.tone = null;
+			}
+		}
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			int s = _sum[i];
+			if (s > Short.MAX_VALUE) {
+				s = Short.MAX_VALUE;
+			} else if (s < Short.MIN_VALUE) {
+				s = Short.MIN_VALUE;
+			}
+			_block[i] = (short) s;
+		}
+	}
+	
+	private long nanosToFrames(long nanos) {
+		// In micro seconds, so the product doesn't overflow.
+		return nanos / 1000 * _sampleRate / 1000000;
+	}
+	
+	private long framesToNanos(long frames) {
+		return frames * 1000000 / _sampleRate * 1000;
+	}
+	
+	// FINAL MEMBERS:
+	// The maximum number of voices at the same time.
+	private static final int MAX_VOICES = 8;
+	private final Output _output;
+	// The sampling-rate of the stream.
+	private final int _sampleRate;
+	// The number of samples the stream buffers.
+	private final int _bufferSize;
+	// The samples between the time of a scheduled voice and its start.
+	private final long _delay;
+	private final Voice[] _voices = new Voice[MAX_VOICES];
+	// One loop per priority.
+	private final Loop[] _loops = new Loop[PRIORITY_ASYSTOLE + 1];
+	// The sum of the voices and the mixed block.
+	private final int[] _sum = new int[BLOCK_SIZE];
+	private final short[] _block = new short[BLOCK_SIZE];
+	
+	// MEMBERS:
+	private Thread _thread;
+	private volatile boolean _running;
+	// The number of samples mixed so far, the index of the first sample of the next block.
+	private long _mixedFrames;
+	// Sample _anchorFrame is heard at _anchorTime (System.nanoTime()).
+	private long _anchorFrame;
+	private long _anchorTime;
+	// Statistics.
+	private long _droppedVoices;
+	private long _lateVoices;
+	private long _reanchors;
+}
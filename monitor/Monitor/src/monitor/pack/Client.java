@@ -6,9 +6,8 @@
 
 package monitor.pack;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
@@ -189,6 +188,9 @@ class Client {
 		private String incomeMessage = "";
 		private boolean newMessage = false;
 
+		// Framing of the current socket, kept for the whole connection
+		private EventFrameReader frameReader;
+
 		// GETTER - SETTER
 
 		/**
@@ -250,6 +252,9 @@ class Client {
 					while (!Thread.currentThread().isInterrupted()) {
 						if (getSocket() == null) {
 							setSocket(new Socket(controllerIP, controllerPort));
+							frameReader = new EventFrameReader(
+									mSocket.getInputStream());
+							requestBinaryEvents();
 							Log.d(TAG, "Client connected");
 							Log.d(TAG,
 									"Connected to "
@@ -261,6 +266,10 @@ class Client {
 						}
 
 						incomeMessage = in();
+						if (incomeMessage == null) {
+							Log.d(TAG, "Connection closed by Controller");
+							break;
+						}
 						Log.d(TAG, incomeMessage);
 					}
 				} catch (Exception e1) {
@@ -271,32 +280,46 @@ class Client {
 		}
 
 		/**
-		 * @return Message from Controller as JSONString
+		 * Asks the Controller for binary EventCodec frames. Controllers which
+		 * do not know the codec ignore it and keep sending JSON
+		 */
+		private void requestBinaryEvents() throws IOException {
+			OutputStream out = mSocket.getOutputStream();
+			out.write((EventCodec.HELLO + "\n").getBytes("US-ASCII"));
+			out.flush();
+		}
+
+		/**
+		 * Reads one message, either a binary EventCodec frame or a JSON
+		 * message, and hands it over to the Monitor
+		 * 
+		 * @return Message from Controller as JSONString, null if the
+		 *         connection was closed
 		 */
 		private String in() {
-			String inStr = "";
-			StringBuilder completeString = new StringBuilder();
+			String message = "";
 			try {
-				BufferedReader inMessage = new BufferedReader(
-						new InputStreamReader(mSocket.getInputStream()));
-
-				while ((inStr = inMessage.readLine()) != null) {
-					System.out.println(inStr);
-					completeString.append(inStr);
-					if (inStr.contains("}"))
-						break;
+				if (!frameReader.next()) {
+					return null;
 				}
-				if (completeString.length() != 0) {
+				EventCodec.Update update = frameReader.getUpdate();
+				if (update != null) {
 					if (mms != null) {
-						mms.newEvent(completeString.toString());
+						mms.newEvent(update.event, update.fieldMask);
 					}
+					return "Binary event";
+				}
+				message = frameReader.getJson();
+				if (mms != null) {
+					mms.newEvent(message);
 				}
 			} catch (UnknownHostException e1) {
 				e1.printStackTrace();
 			} catch (IOException e1) {
 				e1.printStackTrace();
+				return null;
 			}
-			return completeString.toString();
+			return message;
 		}
 	}
 
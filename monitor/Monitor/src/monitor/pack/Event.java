@@ -7,8 +7,9 @@
  */
 package monitor.pack;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import java.io.IOException;
+
+import com.google.gson.JsonParseException;
 
 
 public class Event {
@@ -158,15 +159,11 @@ public class Event {
   }
   
   /**
-   * Convert an Event to JSon String.
+   * Convert an Event to a compact (single line) JSon String.
    * @return JSon String
    */
   public String toJson() {
-	  GsonBuilder builder = new GsonBuilder();
-      builder.setPrettyPrinting().serializeNulls();
-      Gson gson = builder.create();      
-      System.out.println(gson.toJson(this));	  
-	  return gson.toJson(this);
+	  return EventTypeAdapter.INSTANCE.toJson(this);
   }
   
   /**
@@ -175,7 +172,10 @@ public class Event {
    * @return The parsed Event.
    */
   static public Event fromJsonEvent(String g) {
-	  Gson gson = new Gson();
-	  return gson.fromJson(g, Event.class);	  
+	  try {
+		  return EventTypeAdapter.INSTANCE.fromJson(g);
+	  } catch (IOException e) {
+		  throw new JsonParseException(e);
+	  }
   }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright: Universitt Freiburg, 2015
+ */
+
+package monitor.pack;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Framing layer for the messages of the controller. One instance is kept for
+ * the whole connection, so bytes buffered beyond a message are never lost.
+ * A message is either a binary EventCodec frame (starting with the
+ * FRAME_MARKER) or a JSON object. JSON objects are delimited by tracking the
+ * bracket depth outside of strings, which works for newline-delimited
+ * compact JSON as well as for pretty-printed JSON of older controllers,
+ * several messages per TCP segment and messages split over several reads.
+ */
+class EventFrameReader {
+
+	/**
+	 * Creates a reader on the input stream of a connection.
+	 */
+	EventFrameReader(InputStream in) {
+		this._in = new BufferedInputStream(in, 8192);
+	}
+
+	/**
+	 * Blocks until the next message is complete.
+	 *
+	 * @return True if a message was read, false if the connection was closed.
+	 * @throws IOException On a broken connection or a malformed frame.
+	 */
+	boolean next() throws IOException {
+		_update = null;
+		_json = null;
+		int b;
+		// Skip the white space between messages.
+		do {
+			b = _in.read();
+		} while (b == ' ' || b == '\n' || b == '\r' || b == '\t');
+		if (b < 0) {
+			return false;
+		}
+		if (b == EventCodec.FRAME_MARKER) {
+			_update = EventCodec.readUpdate(_in);
+			return true;
+		}
+		if (b != '{') {
+			throw new IOException("Unexpected start of message: " + b);
+		}
+		_jsonBuffer.reset();
+		int depth = 0;
+		boolean inString = false;
+		boolean escaped = false;
+		while (true) {
+			if (b < 0) {
+				throw new IOException("Connection closed inside message");
+			}
+			_jsonBuffer.write(b);
+			if (inString) {
+				if (escaped) {
+					escaped = false;
+				} else if (b == '\\') {
+					escaped = true;
+				} else if (b == '"') {
+					inString = false;
+				}
+			} else if (b == '"') {
+				inString = true;
+			} else if (b == '{' || b == '[') {
+				depth++;
+			} else if (b == '}' || b == ']') {
+				depth--;
+				if (depth == 0) {
+					break;
+				}
+			}
+			if (_jsonBuffer.size() > MAX_JSON_SIZE) {
+				throw new IOException("Message too long");
+			}
+			b = _in.read();
+		}
+		_json = _jsonBuffer.toString("UTF-8");
+		return true;
+	}
+
+	/**
+	 * @return The binary message read by next(), null if it was JSON.
+	 */
+	EventCodec.Update getUpdate() {
+		return _update;
+	}
+
+	/**
+	 * @return The JSON message read by next(), null if it was binary.
+	 */
+	String getJson() {
+		return _json;
+	}
+
+	// FINAL MEMBERS:
+	// Upper bound for a JSON message, protects against a broken stream.
+	private static final int MAX_JSON_SIZE = 64 * 1024;
+
+	// MEMBERS:
+	private final InputStream _in;
+	private final ByteArrayOutputStream _jsonBuffer = new ByteArrayOutputStream(512);
+	private EventCodec.Update _update;
+	private String _json;
+}
@@ -0,0 +1,120 @@
+/**
+ * Streaming JSON adapter for the events, shared by controller and monitor.
+ * University Freiburg
+ */
+package monitor.pack;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes and reads an Event with JsonWriter/JsonReader, without reflection.
+ * The produced JSON has the same field names and enum names as the
+ * reflection based Gson output, so both sides stay compatible with older
+ * versions. Null values are written (serializeNulls). The adapter has no
+ * state and can be used from every thread.
+ */
+public final class EventTypeAdapter extends TypeAdapter<Event> {
+
+	// The shared instance.
+	public static final EventTypeAdapter INSTANCE = new EventTypeAdapter();
+
+	private EventTypeAdapter() {
+	}
+
+	@Override
+	public void write(JsonWriter out, Event e) throws IOException {
+		if (e == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("_index").value(e._index);
+		out.name("_heartRateTo").value(e._heartRateTo);
+		out.name("_time").value(e._time);
+		out.name("_heartPattern").value(name(e._heartPattern));
+		out.name("_heartOn").value(e._heartOn);
+		out.name("_bloodPressureSys").value(e._bloodPressureSys);
+		out.name("_bloodPressureDias").value(e._bloodPressureDias);
+		out.name("_bpPattern").value(name(e._bpPattern));
+		out.name("_bpOn").value(e._bpOn);
+		out.name("_cuffOn").value(e._cuffOn);
+		out.name("_oxygenTo").value(e._oxygenTo);
+		out.name("_oxyPattern").value(name(e._oxyPattern));
+		out.name("_oxyOn").value(e._oxyOn);
+		out.name("_respRate").value(e._respRate);
+		out.name("_respPattern").value(name(e._respPattern));
+		out.name("_respOn").value(e._respOn);
+		out.name("_carbTo").value(e._carbTo);
+		out.name("_carbOn").value(e._carbOn);
+		out.name("_carbPattern").value(name(e._carbPattern));
+		out.name("_timeStamp").value(e._timeStamp);
+		out.name("_syncTimer").value(e._syncTimer);
+		out.name("_flag").value(e._flag);
+		out.name("_timerState").value(name(e._timerState));
+		out.endObject();
+	}
+
+	@Override
+	public Event read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		Event e = new Event(null, null, null, null, null, null, null, null,
+				null, null, null, null, null, false, false, false, false,
+				false, false, false, false, null);
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				continue;
+			}
+			if (name.equals("_index")) e._index = in.nextInt();
+			else if (name.equals("_heartRateTo")) e._heartRateTo = in.nextInt();
+			else if (name.equals("_time")) e._time = in.nextInt();
+			else if (name.equals("_heartPattern")) e._heartPattern = constant(Event.HeartPattern.class, in.nextString());
+			else if (name.equals("_heartOn")) e._heartOn = in.nextBoolean();
+			else if (name.equals("_bloodPressureSys")) e._bloodPressureSys = in.nextInt();
+			else if (name.equals("_bloodPressureDias")) e._bloodPressureDias = in.nextInt();
+			else if (name.equals("_bpPattern")) e._bpPattern = constant(Event.BloodPressPattern.class, in.nextString());
+			else if (name.equals("_bpOn")) e._bpOn = in.nextBoolean();
+			else if (name.equals("_cuffOn")) e._cuffOn = in.nextBoolean();
+			else if (name.equals("_oxygenTo")) e._oxygenTo = in.nextInt();
+			else if (name.equals("_oxyPattern")) e._oxyPattern = constant(Event.O2Pattern.class, in.nextString());
+			else if (name.equals("_oxyOn")) e._oxyOn = in.nextBoolean();
+			else if (name.equals("_respRate")) e._respRate = in.nextInt();
+			else if (name.equals("_respPattern")) e._respPattern = constant(Event.RespPattern.class, in.nextString());
+			else if (name.equals("_respOn")) e._respOn = in.nextBoolean();
+			else if (name.equals("_carbTo")) e._carbTo = in.nextInt();
+			else if (name.equals("_carbOn")) e._carbOn = in.nextBoolean();
+			else if (name.equals("_carbPattern")) e._carbPattern = constant(Event.CarbPattern.class, in.nextString());
+			else if (name.equals("_timeStamp")) e._timeStamp = in.nextInt();
+			else if (name.equals("_syncTimer")) e._syncTimer = in.nextBoolean();
+			else if (name.equals("_flag")) e._flag = in.nextBoolean();
+			else if (name.equals("_timerState")) e._timerState = constant(Event.TimerState.class, in.nextString());
+			else in.skipValue();
+		}
+		in.endObject();
+		return e;
+	}
+
+	private static String name(Enum<?> value) {
+		return value == null ? null : value.name();
+	}
+
+	// Returns the constant of the given name, null for an unknown name
+	// (e.g. a pattern of a newer version) like the reflection based Gson.
+	private static <T extends Enum<T>> T constant(Class<T> type, String name) {
+		try {
+			return Enum.valueOf(type, name);
+		} catch (IllegalArgumentException ex) {
+			return null;
+		}
+	}
+}
@@ -37,5 +37,11 @@ public class GLActivity extends GLSurfaceView {
 		if(mRenderer != null)
 			mRenderer.setSignalserver(s);
 	}
+	
+	//Stop sampling the curves
+	public void stopSampling() {
+		if(mRenderer != null)
+			mRenderer.stopSampling();
+	}
 
 }
@@ -6,9 +6,16 @@ import javax.microedition.khronos.opengles.GL10;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView.Renderer;
 import android.opengl.Matrix;
+import android.os.Debug;
 
 public class GLRenderer implements Renderer {
 	public enum LineType{Background, Heart,Blood,O2,CO2,AF,Trenner}
+	//Hook for measuring the render loop, gets called after every frame on the render thread
+	public interface FrameListener {
+		//frameTime: time spent in onDrawFrame in ns
+		//allocations: objects allocated by the render thread during the frame, -1 if not counted
+		void onFrame(long frameTime, int allocations);
+	}
 	private Line mLineHeart;
 	private Line mLineBlood;
 	private Line mLineO2;
@@ -19,12 +26,24 @@ public class GLRenderer implements Renderer {
 	private int mHeight;
     private float mbgColor[] = { 0.0F, 0.0F, 0.0f, 1.0f };
 	private double mLastUpdate = -1;
-	private double mDeltaTime = 0;
-	private Signalserver mSignalServer;
+	//Frames which were not drawn in time, assuming one frame per sample period
+	private long mDroppedFrames = 0;
+	//Produces the samples of the curves in a thread of its own
+	private SampleClock mSampleClock;
     // mMVPMatrix is an abbreviation for "Model View Projection Matrix"
     private final float[] mMVPMatrix = new float[16];
     private final float[] mProjectionMatrix = new float[16];
     private final float[] mViewMatrix = new float[16];
+    // Matrix of the line which is drawn, reused for every line
+    private final float[] mDrawMatrix = new float[16];
+    private FrameListener mFrameListener;
+    private boolean mCountAllocations;
+    // Sample buffers for the samples taken out of the SampleClock, one per curve
+    private static final int SAMPLE_BUFFER_SIZE = 64;
+    private final float[] mHeartSamples = new float[SAMPLE_BUFFER_SIZE];
+    private final float[] mBloodSamples = new float[SAMPLE_BUFFER_SIZE];
+    private final float[] mO2Samples = new float[SAMPLE_BUFFER_SIZE];
+    private final float[] mCO2Samples = new float[SAMPLE_BUFFER_SIZE];
     
     public GLRenderer()
     {
@@ -60,87 +79,108 @@ public class GLRenderer implements Renderer {
 	}
 	
 	
-	//Draw all Curves
+	//Set the hook for measuring the render loop, null to remove it
+	//Counting the allocations slows down the whole app, it is meant for debugging only
+	@SuppressWarnings("deprecation")
+	public void setFrameListener(FrameListener listener, boolean countAllocations)
+	{
+		mFrameListener = listener;
+		mCountAllocations = listener != null && countAllocations;
+		if(mCountAllocations)
+			Debug.startAllocCounting();
+		else
+			Debug.stopAllocCounting();
+	}
+	
+	//Draw a frame and report it to the FrameListener
 	@Override
+	@SuppressWarnings("deprecation")
 	public void onDrawFrame(GL10 gl) {
-        mDeltaTime += getDeltaTime() / 1000000;
+		FrameListener listener = mFrameListener;
+		if(listener == null)
+		{
+			drawFrame(gl);
+			return;
+		}
+		boolean countAllocations = mCountAllocations;
+		int allocations = countAllocations ? Debug.getThreadAllocCount() : 0;
+		long start = System.nanoTime();
+		drawFrame(gl);
+		long frameTime = System.nanoTime() - start;
+		allocations = countAllocations ? Debug.getThreadAllocCount() - allocations : -1;
+		listener.onFrame(frameTime, allocations);
+	}
+	
+	//Draw all Curves
+	//Nothing is allocated here, so there is no garbage collection because of the render loop
+	private void drawFrame(GL10 gl) {
+        //Count the frames which were missed since the last one
+        double delta = getDeltaTime();
+        if(delta > 1.5 * SampleClock.PERIOD)
+        	mDroppedFrames += (long)(delta / SampleClock.PERIOD + 0.5) - 1;
         // Draw background color
         GLES20.glClearColor(mbgColor[0], mbgColor[1], mbgColor[2], 1.0f);
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
         gl.glLineWidth(3f);
         // Set the camera position (View matrix)
         Matrix.setLookAtM(mViewMatrix, 0, 0, 0, 1, 0f, 0f, 0f, 0f, 1.0f, 0.0f);
-        float[] drawMatrix = new float[16];
         // Calculate the projection and view transformation
         Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mViewMatrix, 0);
-        if (mSignalServer == null) return;
-        //Get Data from SignalServer
-        while(mDeltaTime > 1000f / 60f )
+        SampleClock clock = mSampleClock;
+        if (clock == null) return;
+        //Take all samples the SampleClock produced since the last frame
+        int n;
+        while((n = clock.read(mHeartSamples, mBloodSamples, mO2Samples, mCO2Samples, SAMPLE_BUFFER_SIZE)) > 0)
         {
-        	mDeltaTime -= 1000f / 60f;
-        	//EKG
-        	if(mLineHeart.getDrawAble())
-        		mLineHeart.setValue((float)mSignalServer.getHeartRateValue() / 250);
-        	else
-        		mLineHeart.setValue(0);
-        	//Bloodpressure
-        	if(mLineBlood.getDrawAble())
-        		mLineBlood.setValue((float)mSignalServer.getBloodPressureValue() / 170);
-        	else
-        		mLineBlood.setValue(0);
-        	//ETCO2
-        	if(mLineCO2.getDrawAble())
-        		//mLineCO2.setValue(50);
-        		mLineCO2.setValue((float)mSignalServer.getCO2Value() / 250);
-        	else
-        		mLineCO2.setValue(0);
-        	//SpO2
-        	if(mLineO2.getDrawAble())
-        		mLineO2.setValue((float)mSignalServer.getO2Value() / 250);
-        	else
-        		mLineO2.setValue(0);
-	        mSignalServer.increment();
+        	boolean heart = mLineHeart.getDrawAble();
+        	boolean blood = mLineBlood.getDrawAble();
+        	boolean co2 = mLineCO2.getDrawAble();
+        	boolean o2 = mLineO2.getDrawAble();
+        	for(int i = 0; i < n; i++)
+        	{
+        		//EKG
+        		mLineHeart.setValue(heart ? mHeartSamples[i] / 250 : 0);
+        		//Bloodpressure
+        		mLineBlood.setValue(blood ? mBloodSamples[i] / 170 : 0);
+        		//ETCO2
+        		mLineCO2.setValue(co2 ? mCO2Samples[i] / 250 : 0);
+        		//SpO2
+        		mLineO2.setValue(o2 ? mO2Samples[i] / 250 : 0);
+        	}
         }
         
         //Scissor Test for Curves
         gl.glEnable(GL10.GL_SCISSOR_TEST);
         // Draw EKG Line
         gl.glScissor(0, (int)(mHeight * 0.71F), mWidth, (int)(mHeight * (0.29F)));
-        drawMatrix = mMVPMatrix.clone();
-        Matrix.translateM(drawMatrix, 0, 0F, 0.55F, 0F);
-        mLineHeart.draw(drawMatrix);
+        drawLine(mLineHeart, 0.55F);
         
         
         //Draw Bloodpressure Line
         gl.glScissor(0, (int)(mHeight * 0.48F), mWidth, (int)(mHeight * (0.23F)));
-        drawMatrix = mMVPMatrix.clone();
-        Matrix.translateM(drawMatrix, 0, 0F, -0.11F, 0F);
-        mLineBlood.draw(drawMatrix); //Translation = 0
+        drawLine(mLineBlood, -0.11F);
         
         //Draw  O2 Line
         gl.glScissor(0, (int)(mHeight * 0.24F), mWidth, (int)(mHeight * (0.23F)));
-        drawMatrix = mMVPMatrix.clone();
-        Matrix.translateM(drawMatrix, 0, 0F, -0.52F, 0F);
-        mLineO2.draw(drawMatrix);
+        drawLine(mLineO2, -0.52F);
         
         gl.glScissor(0, 0, mWidth, (int)(mHeight * (0.23F)));
         //Draw CO2 Line
-        drawMatrix = mMVPMatrix.clone();
-        Matrix.translateM(drawMatrix, 0, 0F, -0.99F, 0F);
-        mLineCO2.draw(drawMatrix);
+        drawLine(mLineCO2, -0.99F);
         
         gl.glDisable(GL10.GL_SCISSOR_TEST);
         //Trennlinien zwischen den einzelnen Kurven
         gl.glLineWidth(2f);
-        drawMatrix = mMVPMatrix.clone();
-        Matrix.translateM(drawMatrix, 0, 0F, 0.415F, 0F);
-        mLineTrenner.draw(drawMatrix);
-        drawMatrix = mMVPMatrix.clone();
-        Matrix.translateM(drawMatrix, 0, 0F, -0.056F, 0F);
-        mLineTrenner.draw(drawMatrix);
-        drawMatrix = mMVPMatrix.clone();
-        Matrix.translateM(drawMatrix, 0, 0F, -0.528F, 0F);
-        mLineTrenner.draw(drawMatrix);
+        drawLine(mLineTrenner, 0.415F);
+        drawLine(mLineTrenner, -0.056F);
+        drawLine(mLineTrenner, -0.528F);
+	}
+	
+	//Draw a line moved up or down by y
+	private void drawLine(Line line, float y)
+	{
+		Matrix.translateM(mDrawMatrix, 0, mMVPMatrix, 0, 0F, y, 0F);
+		line.draw(mDrawMatrix);
 	}
 
 	//Called if Size of RenderWindow changes
@@ -194,6 +234,19 @@ public class GLRenderer implements Renderer {
 			mLineHeart.setDrawAble(draw);
 		if(line == LineType.O2)
 			mLineO2.setDrawAble(draw);
+		//Curves which are not drawn are not calculated
+		SampleClock clock = mSampleClock;
+		if(clock != null)
+		{
+			if(line == LineType.Blood)
+				clock.setChannelEnabled(SampleClock.BP, draw);
+			if(line == LineType.CO2)
+				clock.setChannelEnabled(SampleClock.CO2, draw);
+			if(line == LineType.Heart)
+				clock.setChannelEnabled(SampleClock.ECG, draw);
+			if(line == LineType.O2)
+				clock.setChannelEnabled(SampleClock.SPO2, draw);
+		}
 	}
 
 	//Initialze RenderWindow and Curves
@@ -243,13 +296,58 @@ public class GLRenderer implements Renderer {
         	mLineTrenner.setValue(0);
         	mLineTrenner.setDrawAble(true);
         }
+        //Compile the shaders once for all lines, the context is new
+        LineProgram program = new LineProgram();
+        mLineHeart.setProgram(program);
+        mLineBlood.setProgram(program);
+        mLineO2.setProgram(program);
+        mLineCO2.setProgram(program);
+        mLineAF.setProgram(program);
+        mLineTrenner.setProgram(program);
         
 		
 	}
 	
-	//Setter SignalServer
+	//Setter SignalServer, starts sampling its curves
 	public void setSignalserver(Signalserver s) {
-		mSignalServer = s;
+		stopSampling();
+		if(s != null)
+		{
+			SampleClock clock = new SampleClock(s);
+			clock.start();
+			mSampleClock = clock;
+		}
+	}
+	
+	//Stop sampling the curves
+	public void stopSampling() {
+		SampleClock clock = mSampleClock;
+		mSampleClock = null;
+		if(clock != null)
+			clock.stop();
+	}
+	
+	//Frames which were not drawn in time
+	public long getDroppedFrames() {
+		return mDroppedFrames;
+	}
+	
+	//Largest delay of the sampling clock against the sweep rate in ns
+	public long getMaxSampleDrift() {
+		SampleClock clock = mSampleClock;
+		return clock == null ? 0 : clock.getMaxDrift();
+	}
+	
+	//Average delay of the sampling clock against the sweep rate in ns
+	public long getAverageSampleDrift() {
+		SampleClock clock = mSampleClock;
+		return clock == null ? 0 : clock.getAverageDrift();
+	}
+	
+	//Samples skipped because the sampling clock was stalled
+	public long getSkippedSamples() {
+		SampleClock clock = mSampleClock;
+		return clock == null ? 0 : clock.getSkippedSamples();
 	}
 
 }
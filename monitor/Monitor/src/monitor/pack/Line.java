@@ -5,33 +5,22 @@ import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
 import android.opengl.GLES20;
-import android.util.Log;
 
 public class Line {
-	//Shaders
-	private final String vertexShaderCode =
-            // This matrix member variable provides a hook to manipulate
-            // the coordinates of the objects that use this vertex shader
-            "uniform mat4 uMVPMatrix;" +
-            "attribute vec4 vPosition;" +
-            "void main() {" +
-            // the matrix must be included as a modifier of gl_Position
-            // Note that the uMVPMatrix factor *must be first* in order
-            // for the matrix multiplication product to be correct.
-            "  gl_Position = uMVPMatrix * vPosition;" +
-            "}";
-
-	private final String fragmentShaderCode =
-	    "precision mediump float;" +
-	    "uniform vec4 vColor;" +
-	    "void main() {" +
-	    "  gl_FragColor = vColor;" +
-	    "}";
+	//Copy of the vertices in native memory, the source of the uploads to the vertex buffer object
+	//Every point of the line has two vertices: the point of the curve and the point below it on the
+	//zero line, which is needed to fill the curve
 	private FloatBuffer mVertexBuffer;
- 	private final int mProgram;
- 	private int mPositionHandle;
- 	private int mColorHandle;
- 	private int mMVPMatrixHandle;
+	//Vertex buffer object holding the line, created on the first draw
+	private int mBufferHandle = 0;
+	//Points changed since the last upload: mDirtyCount points of the ring starting at mDirtyStart
+	private int mDirtyStart = 0;
+	private int mDirtyCount = 0;
+	//Statistics of the uploads to the vertex buffer object
+	private long mUploadCount = 0;
+	private long mUploadedBytes = 0;
+ 	//Shared shader program, set by the GLRenderer for every OpenGL context
+ 	private LineProgram mProgram;
  	private int mPos = 0;
  	private boolean mGap;
  	private boolean mFill = false;
@@ -40,9 +29,9 @@ public class Line {
     // number of coordinates per vertex in this array
     private static final int COORDS_PER_VERTEX = 3;
     private int mResolution;
-    private float mLineCoords[];
     private int mVertexCount;
     private final int mVertexStride = COORDS_PER_VERTEX * 4; // 4 bytes per vertex
+    private final int mPointStride = 2 * mVertexStride; // curve and zero line vertex
 
     // Set color with red, green, blue and alpha (opacity) values
     private float mColor[] = { 1F, 0.0F, 0.0f, 1.0f };
@@ -52,36 +41,33 @@ public class Line {
     public Line(int res, boolean gap) {
     	mGap = gap;
     	mResolution = res;
-    	mLineCoords = new float[mResolution*3];
-    	mVertexCount = mLineCoords.length / COORDS_PER_VERTEX;
-    	for(int i = 0; i < mResolution;i++)
-    	{
-    		mLineCoords[i*3] = -1F + (2f * i / (mResolution -1));
-    		mLineCoords[i*3+1] = 0F;
-    		mLineCoords[i*3+2] = 0F;
-    	}
+    	mVertexCount = mResolution * 2;
         // initialize vertex byte buffer for shape coordinates
     	ByteBuffer bb = ByteBuffer.allocateDirect(
                 // (number of coordinate values * 4 bytes per float)
-        		(mLineCoords.length + 3) * 4);
+        		mVertexCount * mVertexStride);
         // use the device hardware's native byte order
         bb.order(ByteOrder.nativeOrder());
 
         // create a floating point buffer from the ByteBuffer
         mVertexBuffer = bb.asFloatBuffer();
-        // add the coordinates to the FloatBuffer
-        mVertexBuffer.put(mLineCoords);
+        // add the coordinates to the FloatBuffer, all points start on the zero line
+    	for(int i = 0; i < mResolution;i++)
+    	{
+    		float x = -1F + (2f * i / (mResolution -1));
+    		mVertexBuffer.put(x).put(0F).put(0F);
+    		mVertexBuffer.put(x).put(0F).put(0F);
+    	}
         // set the buffer to read the first coordinate
         mVertexBuffer.position(0);
-     // prepare shaders and OpenGL program
-        int vertexShader = GLRenderer.loadShader(
-                GLES20.GL_VERTEX_SHADER, vertexShaderCode);
-        int fragmentShader = GLRenderer.loadShader(
-                GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
-        mProgram = GLES20.glCreateProgram();             // create empty OpenGL Program
-        GLES20.glAttachShader(mProgram, vertexShader);   // add the vertex shader to program
-        GLES20.glAttachShader(mProgram, fragmentShader); // add the fragment shader to program
-        GLES20.glLinkProgram(mProgram);                  // create OpenGL program executables
+    }
+    
+    //Set the shader program of a new OpenGL context
+    //The vertex buffer object of the old context is gone, it gets created again on the next draw
+    public void setProgram(LineProgram program)
+    {
+    	mProgram = program;
+    	mBufferHandle = 0;
     }
     
     //Set Color of Line
@@ -93,14 +79,14 @@ public class Line {
     }
     
     //Set new Point received from the SignalServer
+    //Only the changed vertex is written, it is uploaded with the next draw
     public void setValue(float val)
     {
-    	mVertexBuffer.clear();
-    	
-    	mLineCoords[mPos * 3 + 1] = val;
-    	mVertexBuffer.put(mLineCoords);
-        // set the buffer to read the first coordinate
-        mVertexBuffer.position(0);
+    	mVertexBuffer.put(mPos * 2 * COORDS_PER_VERTEX + 1, val);
+    	if(mDirtyCount == 0)
+    		mDirtyStart = mPos;
+    	if(mDirtyCount < mResolution)
+    		mDirtyCount++;
     	mPos++;
     	if(mPos >= mResolution)
         	mPos = 0;
@@ -112,94 +98,90 @@ public class Line {
      * this shape.
      */
     public void draw(float[] mvpMatrix) {
-    	if(!mDraw)
+    	if(!mDraw || mProgram == null)
     		return;
         // Add program to OpenGL environment
-        GLES20.glUseProgram(mProgram);
-
-        // get handle to vertex shader's vPosition member
-        mPositionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
+        mProgram.use();
+        int positionHandle = mProgram.getPositionHandle();
 
         // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
-
-        // Prepare the triangle coordinate data
-        GLES20.glVertexAttribPointer(
-                mPositionHandle, COORDS_PER_VERTEX,
-                GLES20.GL_FLOAT, false,
-                mVertexStride, mVertexBuffer);
-
-        // get handle to fragment shader's vColor member
-        mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
+        GLES20.glEnableVertexAttribArray(positionHandle);
 
         // Set color for drawing the triangle
-        GLES20.glUniform4fv(mColorHandle, 1, mColor, 0);
-
-        // get handle to shape's transformation matrix
-        mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
+        GLES20.glUniform4fv(mProgram.getColorHandle(), 1, mColor, 0);
 
         // Apply the projection and view transformation
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
-        //Check if we need a small gap
-        if(mGap)
+        GLES20.glUniformMatrix4fv(mProgram.getMVPMatrixHandle(), 1, false, mvpMatrix, 0);
+        // Cut out the gap behind the write head, the last written point is mPos - 1
+        GLES20.glUniform1f(mProgram.getHalfResolutionHandle(), (mResolution - 1) / 2F);
+        GLES20.glUniform3f(mProgram.getSweepHandle(), mPos - 1, mGap ? mResolution/100 + 1 : 0, mResolution);
+        uploadVertices();
+        if(mFill)
         {
-        	if(mFill)
-        	{
-        		int i = 0;
-        		while(i < mResolution - 1)
-        		{
-        			
-        			mVertexBuffer.clear();
-        			int start = i;
-        			//Nothing to Fill
-        			if(mLineCoords[i*3+1] == 0)
-        			{
-        				//Loop through all points which equals 0
-        				while( i < mResolution - 1 && mLineCoords[i*3+1] == 0 && !(i >= mPos && i < mPos + mResolution/100))
-        					i++;
-        				
-        				mVertexBuffer.put(mLineCoords,start*3,(i-start)*3);
-        		        mVertexBuffer.position(0);
-        		    	if(mPos >= mResolution)
-        		        	mPos = 0;
-        				GLES20.glDrawArrays(GLES20.GL_LINE_STRIP, 0, (i - start));
-        			}else{
-        				//We got something to fill
-        				//Add Vertex as central Point of all Triangles
-        				mVertexBuffer.put(new float[]{-1F + (2f * i / (mResolution -1)),0,0});
-	        			while(i < mResolution -1 && mLineCoords[i*3+1] != 0 && !(i >= mPos && i < mPos + mResolution/100))
-	        				i++;
-	        			mVertexBuffer.put(mLineCoords,start*3,(i-start)*3);
-	        			//Add HelperVertex to fill whole Curve
-	        			mVertexBuffer.put(new float[]{-1F + (2f * i / (mResolution -1)),0,0});
-        		        mVertexBuffer.position(0);
-        		        GLES20.glDrawArrays(GLES20.GL_LINE_STRIP, 0, (i - start)+2);
-        		        //We need at least 3 Vertexes for a triangle
-        		        if(i - start > 2)
-	        				GLES20.glDrawArrays(GLES20.GL_TRIANGLE_FAN, 0, (i - start)+2);
-        			}
-        			while(i >= mPos && i < mPos + mResolution/100)
-        				i++;
-        		}
-        	}else{
-		        int startPos = mPos + mResolution/100;
-		        int tempPos = startPos;
-		        //Check if the gap is at the beginning of the line
-		        startPos = startPos >= mResolution ? startPos - mResolution : 0;
-		        //Draw Line before Gap
-		        GLES20.glDrawArrays(GLES20.GL_LINE_STRIP, startPos, mPos - startPos);
-		        //Check if we need a line after gap
-		        if(tempPos < mResolution)
-		        	//Draw Line after Gap
-		        	GLES20.glDrawArrays(GLES20.GL_LINE_STRIP, tempPos, mVertexCount - tempPos);
-        	}
-        }else //No GAP
-        	GLES20.glDrawArrays(GLES20.GL_LINE_STRIP, 0, mVertexCount);
+        	// Triangles between the curve and the zero line, using both vertices of every point
+        	GLES20.glVertexAttribPointer(
+        			positionHandle, COORDS_PER_VERTEX,
+        			GLES20.GL_FLOAT, false,
+        			mVertexStride, 0);
+        	GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, mVertexCount);
+        }
+        // The curve, using only the first vertex of every point
+        GLES20.glVertexAttribPointer(
+        		positionHandle, COORDS_PER_VERTEX,
+        		GLES20.GL_FLOAT, false,
+        		mPointStride, 0);
+        GLES20.glDrawArrays(GLES20.GL_LINE_STRIP, 0, mResolution);
         // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
+        GLES20.glDisableVertexAttribArray(positionHandle);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
         
     }
     
+    //Bind the vertex buffer object as vertex data and copy the vertices changed since the last draw into it.
+    //The buffer object is created and filled completely on the first call.
+    private void uploadVertices()
+    {
+    	if(mBufferHandle == 0)
+    	{
+    		int[] handle = new int[1];
+    		GLES20.glGenBuffers(1, handle, 0);
+    		mBufferHandle = handle[0];
+    		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBufferHandle);
+    		mVertexBuffer.position(0);
+    		GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertexCount * mVertexStride, mVertexBuffer, GLES20.GL_DYNAMIC_DRAW);
+    		mUploadCount++;
+    		mUploadedBytes += mVertexCount * mVertexStride;
+    		mDirtyCount = 0;
+    	}
+    	else
+    	{
+    		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBufferHandle);
+    		if(mDirtyCount > 0)
+    		{
+    			//The changed points may wrap around the end of the line
+    			int end = mDirtyStart + mDirtyCount;
+    			if(end <= mResolution)
+    				uploadRange(mDirtyStart, mDirtyCount);
+    			else
+    			{
+    				uploadRange(mDirtyStart, mResolution - mDirtyStart);
+    				uploadRange(0, end - mResolution);
+    			}
+    			mDirtyCount = 0;
+    		}
+    	}
+    }
+    
+    //Copy count points starting with point first into the vertex buffer object
+    private void uploadRange(int first, int count)
+    {
+    	mVertexBuffer.position(first * 2 * COORDS_PER_VERTEX);
+    	GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, first * mPointStride, count * mPointStride, mVertexBuffer);
+    	mVertexBuffer.position(0);
+    	mUploadCount++;
+    	mUploadedBytes += count * mPointStride;
+    }
+    
     //Draw/Hide Line
     public void setDrawAble(boolean draw)
     {
@@ -217,4 +199,16 @@ public class Line {
     {
     	mFill = fill;
     }
+    
+    //Number of uploads to the vertex buffer object
+    public long getUploadCount()
+    {
+    	return mUploadCount;
+    }
+    
+    //Bytes copied to the vertex buffer object
+    public long getUploadedBytes()
+    {
+    	return mUploadedBytes;
+    }
 }
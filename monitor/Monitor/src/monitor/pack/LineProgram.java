@@ -0,0 +1,115 @@
+package monitor.pack;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+//Shader program shared by all Lines. Compiled and linked once per OpenGL context in
+//GLRenderer.onSurfaceCreated, the handles of the attribute and uniforms are looked up once.
+//The sweep gap behind the write head is cut out in the fragment shader, so a line is drawn
+//with the same number of draw calls whatever the curve looks like.
+final class LineProgram {
+	//Shaders
+	private static final String VERTEX_SHADER_CODE =
+            // This matrix member variable provides a hook to manipulate
+            // the coordinates of the objects that use this vertex shader
+            "uniform mat4 uMVPMatrix;" +
+            // (resolution - 1) / 2, converts x to the number of the point
+            "uniform float uHalfResolution;" +
+            "attribute vec4 vPosition;" +
+            // number of the point, interpolated between the points
+            "varying float vIndex;" +
+            "void main() {" +
+            "  vIndex = (vPosition.x + 1.0) * uHalfResolution;" +
+            // the matrix must be included as a modifier of gl_Position
+            // Note that the uMVPMatrix factor *must be first* in order
+            // for the matrix multiplication product to be correct.
+            "  gl_Position = uMVPMatrix * vPosition;" +
+            "}";
+
+	private static final String FRAGMENT_SHADER_CODE =
+	    // the point numbers go up to the resolution, use the best precision available
+	    "#ifdef GL_FRAGMENT_PRECISION_HIGH\n" +
+	    "precision highp float;\n" +
+	    "#else\n" +
+	    "precision mediump float;\n" +
+	    "#endif\n" +
+	    "uniform vec4 vColor;" +
+	    // x: last written point, y: gap length + 1 (0 = no gap), z: resolution
+	    "uniform vec3 uSweep;" +
+	    "varying float vIndex;" +
+	    "void main() {" +
+	    // distance behind the last written point, the gap wraps around the end of the line
+	    "  float d = mod(vIndex - uSweep.x, uSweep.z);" +
+	    "  if (d > 0.0 && d < uSweep.y)" +
+	    "    discard;" +
+	    "  gl_FragColor = vColor;" +
+	    "}";
+
+	private final int mProgram;
+	private final int mPositionHandle;
+	private final int mColorHandle;
+	private final int mMVPMatrixHandle;
+	private final int mHalfResolutionHandle;
+	private final int mSweepHandle;
+
+	//Compile and link the program, must be called on the render thread
+	LineProgram()
+	{
+		// prepare shaders and OpenGL program
+		int vertexShader = GLRenderer.loadShader(
+				GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_CODE);
+		int fragmentShader = GLRenderer.loadShader(
+				GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_CODE);
+		mProgram = GLES20.glCreateProgram();             // create empty OpenGL Program
+		GLES20.glAttachShader(mProgram, vertexShader);   // add the vertex shader to program
+		GLES20.glAttachShader(mProgram, fragmentShader); // add the fragment shader to program
+		GLES20.glLinkProgram(mProgram);                  // create OpenGL program executables
+		int[] status = new int[1];
+		GLES20.glGetProgramiv(mProgram, GLES20.GL_LINK_STATUS, status, 0);
+		if(status[0] == 0)
+			Log.e("LineProgram", "Could not link program: " + GLES20.glGetProgramInfoLog(mProgram));
+		// the shaders are kept alive by the program
+		GLES20.glDeleteShader(vertexShader);
+		GLES20.glDeleteShader(fragmentShader);
+		// get handle to vertex shader's vPosition member
+		mPositionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
+		// get handle to fragment shader's vColor member
+		mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
+		// get handle to shape's transformation matrix
+		mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
+		// get handles to the resolution and to the position of the write head and the gap
+		mHalfResolutionHandle = GLES20.glGetUniformLocation(mProgram, "uHalfResolution");
+		mSweepHandle = GLES20.glGetUniformLocation(mProgram, "uSweep");
+	}
+
+	//Add program to OpenGL environment
+	void use()
+	{
+		GLES20.glUseProgram(mProgram);
+	}
+
+	int getPositionHandle()
+	{
+		return mPositionHandle;
+	}
+
+	int getColorHandle()
+	{
+		return mColorHandle;
+	}
+
+	int getMVPMatrixHandle()
+	{
+		return mMVPMatrixHandle;
+	}
+
+	int getHalfResolutionHandle()
+	{
+		return mHalfResolutionHandle;
+	}
+
+	int getSweepHandle()
+	{
+		return mSweepHandle;
+	}
+}
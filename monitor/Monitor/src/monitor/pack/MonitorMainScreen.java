@@ -7,8 +7,6 @@
 package monitor.pack;
 
 import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
 import android.app.Activity;
 import android.graphics.Color;
 import android.graphics.drawable.Drawable;
@@ -99,10 +97,11 @@ public class MonitorMainScreen extends Activity {
 	private final double _respRandMult = 1;
 	
 	// MEMBERS:
-	// Indicators if curves/values for each parameter are active.
-	private boolean _ekgActive;
+	// Indicators if curves/values for each parameter are active. EKG and O2 are volatile,
+	// because heartPeak() and o2Peak() read them on the SampleClock thread.
+	private volatile boolean _ekgActive;
 	private boolean _rrActive;
-	private boolean _o2Active;
+	private volatile boolean _o2Active;
 	private boolean _co2Active;
 	private boolean _nibpActive;
 	private boolean _respActive;
@@ -151,7 +150,8 @@ public class MonitorMainScreen extends Activity {
 	private int _diaBloodPressure;
 	private int _sysBloodPressure;
 	private int _ekgValue;
-	private int _o2Value;
+	// Volatile, the heart-sound reads it on the SampleClock thread.
+	private volatile int _o2Value;
 	private int _co2Value;
 	private int _respValue;
 	private Event.HeartPattern _heartPattern;
@@ -177,8 +177,8 @@ public class MonitorMainScreen extends Activity {
 	// States which menu is currently open: 0 - EKG, 1 - RR, 2 - O2, 3 - CO2.
 	private int _menuSelection;
 	
-	// Indicator if the EKG-sound is active.
-	private boolean _ekgSoundOn;
+	// Indicator if the EKG-sound is active. Volatile, the SampleClock thread reads it.
+	private volatile boolean _ekgSoundOn;
 	
 	// Indicator if the settings are opened for the first time.
 	private boolean _firstSettingsOpen;
@@ -193,12 +193,14 @@ public class MonitorMainScreen extends Activity {
 	private Signalserver _signalServer;
 	private GLActivity _glActivivty;
 	private SoundHandler _soundHandler;
-	private Timer _autoNibpTimer;
-	private Timer _incDecTimer;
-	private Timer _ekgBlinkTimer;
-	private Timer _paramBlinkTimer;
-	private Timer _alarmPauseTimer;
-	private Timer _stopWatchTimer;
+	// The shared scheduler of the timed tasks and the tasks.
+	private MonitorScheduler _scheduler;
+	private MonitorScheduler.Task _autoNibpTask;
+	private MonitorScheduler.Task _incDecTask;
+	private MonitorScheduler.Task _ekgBlinkTask;
+	private MonitorScheduler.Task _paramBlinkTask;
+	private MonitorScheduler.Task _alarmPauseTask;
+	private MonitorScheduler.Task _stopWatchTask;
 	private Random _randomGenerator;
 	
 	
@@ -349,6 +351,7 @@ public class MonitorMainScreen extends Activity {
 		_timerActive = false;
 		
 		// Create the instances.
+		_scheduler = new MonitorScheduler();
 		_settingsLayout = (LinearLayout) this.findViewById(R.id.settingsLayout);
 		_defiLayout = (RelativeLayout) this.findViewById(R.id.defiLayout);
 		_updateHandler = new UpdateHandler(this);
@@ -613,13 +616,20 @@ public class MonitorMainScreen extends Activity {
 	}
 	
 	/**
-	 * Destroy the soundHandler object when the app closed to stop the sounds.
+	 * Destroy the soundHandler object, stop the sampling of the curves and the scheduled tasks
+	 * when the app closed to stop the sounds.
 	 */
 	@Override
 	protected void onDestroy() {
+		if (_glActivivty != null) {
+			_glActivivty.stopSampling();
+		}
 		if (_soundHandler != null) {
 			_soundHandler.destroy();
 		}
+		if (_scheduler != null) {
+			_scheduler.shutdown();
+		}
 		super.onDestroy();
 	}
 	
@@ -666,9 +676,8 @@ public class MonitorMainScreen extends Activity {
 		nibpAutoTimeTextView.setText("" + timeMin + " min");
 		// Update a running NIBP with a new auto repeat time if necessary.
 		if (_autoNIBPRunning) {
-			if (_autoNibpTimer != null) _autoNibpTimer.cancel();
-			_autoNibpTimer = new Timer();
-			_autoNibpTimer.scheduleAtFixedRate(new TimerTask() {
+			if (_autoNibpTask != null) _autoNibpTask.cancel();
+			_autoNibpTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 	        	public void run(){
 	        		runOnUiThread(new Runnable() {
 	        			public void run() {
@@ -1079,7 +1088,7 @@ public class MonitorMainScreen extends Activity {
 			nibpAutoButton.setBackgroundResource(R.drawable.green_button);
 			nibpAutoButton.setText("Start A.-NIBP");
 			_autoNIBPRunning = false;
-			if (_autoNibpTimer != null) _autoNibpTimer.cancel();
+			if (_autoNibpTask != null) _autoNibpTask.cancel();
 		} else {
 			if(!_nibpRunning) {
 				// If no measurement is running, schedule a measurement task every _nibpAutoTime and indicate
@@ -1087,9 +1096,8 @@ public class MonitorMainScreen extends Activity {
 				nibpAutoButton.setBackgroundResource(R.drawable.red_button);
 				nibpAutoButton.setText("Stop A.-NIBP");
 				_autoNIBPRunning = true;
-				if (_autoNibpTimer != null) _autoNibpTimer.cancel();
-				_autoNibpTimer = new Timer();
-				_autoNibpTimer.scheduleAtFixedRate(new TimerTask() {
+				if (_autoNibpTask != null) _autoNibpTask.cancel();
+				_autoNibpTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 		        	public void run(){
 		        		runOnUiThread(new Runnable() {
 		        			public void run() {
@@ -1137,12 +1145,11 @@ public class MonitorMainScreen extends Activity {
 						}
 					});
 					// Stop the timer if necessary.
-					if (_ekgBlinkTimer != null) {
-						_ekgBlinkTimer.cancel();
+					if (_ekgBlinkTask != null) {
+						_ekgBlinkTask.cancel();
 					}
 					// Start blinking.
-					_ekgBlinkTimer = new Timer();
-					_ekgBlinkTimer.scheduleAtFixedRate(new TimerTask() {
+					_ekgBlinkTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 				       	public void run(){
 				       		blinkEKGParam();
 				    	}
@@ -1162,18 +1169,17 @@ public class MonitorMainScreen extends Activity {
 					}
 				});
 				// Stop the EKG blink timer if necessary.
-				if (_ekgBlinkTimer != null) {
-					_ekgBlinkTimer.cancel();
+				if (_ekgBlinkTask != null) {
+					_ekgBlinkTask.cancel();
 					_ekgBlinkActive = false;
 				}
 				if (!_paramBlinkActive) {
 					// Stop the timer if necessary.
-					if (_paramBlinkTimer != null) {
-						_paramBlinkTimer.cancel();
+					if (_paramBlinkTask != null) {
+						_paramBlinkTask.cancel();
 					}
 					// Start blinking.
-					_paramBlinkTimer = new Timer();
-					_paramBlinkTimer.scheduleAtFixedRate(new TimerTask() {
+					_paramBlinkTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 			        	public void run(){
 			        		blinkParam();
 			    		}
@@ -1182,8 +1188,8 @@ public class MonitorMainScreen extends Activity {
 				}
 			} else {
 				// If there is an other heartpattern schedule the display in main GUI thread and stop the blinking (if necessary).
-				if (_ekgBlinkTimer != null) {
-					_ekgBlinkTimer.cancel();
+				if (_ekgBlinkTask != null) {
+					_ekgBlinkTask.cancel();
 					_ekgBlinkActive = false;
 				}
 				runOnUiThread(new Runnable() {
@@ -1227,12 +1233,11 @@ public class MonitorMainScreen extends Activity {
 				});
 				if (!_paramBlinkActive) {
 					// Stop the timer if necessary.
-					if (_paramBlinkTimer != null) {
-						_paramBlinkTimer.cancel();
+					if (_paramBlinkTask != null) {
+						_paramBlinkTask.cancel();
 					}
 					// Start blinking.
-					_paramBlinkTimer = new Timer();
-					_paramBlinkTimer.scheduleAtFixedRate(new TimerTask() {
+					_paramBlinkTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 			        	public void run(){
 			        		blinkParam();
 			    		}
@@ -1308,12 +1313,11 @@ public class MonitorMainScreen extends Activity {
 				});
 				if (!_paramBlinkActive) {
 					// Stop the timer if necessary.
-					if (_paramBlinkTimer != null) {
-						_paramBlinkTimer.cancel();
+					if (_paramBlinkTask != null) {
+						_paramBlinkTask.cancel();
 					}
 					// Start blinking.
-					_paramBlinkTimer = new Timer();
-					_paramBlinkTimer.scheduleAtFixedRate(new TimerTask() {
+					_paramBlinkTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 			        	public void run(){
 			        		blinkParam();
 			    		}
@@ -1778,8 +1782,8 @@ public class MonitorMainScreen extends Activity {
 	public void alarmOnOff(View view) {
 		// If the alarm is paused, cancel this.
 		if(_alarmPaused) {
-			if(_alarmPauseTimer != null) {
-				_alarmPauseTimer.cancel();
+			if(_alarmPauseTask != null) {
+				_alarmPauseTask.cancel();
 			}
 			_alarmPaused = false;
 			_alarmActive = true;
@@ -1836,8 +1840,8 @@ public class MonitorMainScreen extends Activity {
 	public void pauseAlarm(View view) {
 		// If the alarm is already paused, cancel the pause and reactivate the alarm.
 		if(_alarmPaused) {
-			if(_alarmPauseTimer != null) {
-				_alarmPauseTimer.cancel();
+			if(_alarmPauseTask != null) {
+				_alarmPauseTask.cancel();
 			}
 			_alarmPaused = false;
 			Button alarmPauseButton = (Button) this.findViewById(R.id.alarmPauseButton);
@@ -1853,8 +1857,7 @@ public class MonitorMainScreen extends Activity {
 				_alarmActive = false;
 				checkAlarm();
 				_alarmPaused = true;
-				_alarmPauseTimer = new Timer();
-				_alarmPauseTimer.schedule(new TimerTask() {
+				_alarmPauseTask = _scheduler.schedule(new MonitorScheduler.Task() {
 		        	public void run(){
 		        		runOnUiThread(new Runnable() {
 		        			public void run() {
@@ -2003,16 +2006,18 @@ public class MonitorMainScreen extends Activity {
 	/**
      * Should be called if the highest point of one period of the heart-curve is reached to 
      * trigger the sound and blinking heart.
+     * 
+     * @param time - The time of the peak (System.nanoTime()).
      */
-	public void heartPeak() {
-		// Schedule a blink of the little EKG-heart and, if activated, the heart-sound in the 
-		// main GUI thread.
+	public void heartPeak(long time) {
+		// If activated, schedule the heart-sound at once, so the mixer can line it up with the peak.
+		if (_ekgSoundOn) {
+			_soundHandler.playHeartSound(_o2Active, _o2Value, time);
+		}
+		// Schedule a blink of the little EKG-heart in the main GUI thread.
 		runOnUiThread(new Runnable() {
 			public void run() {
 				blinkHeart();
-				if (_ekgSoundOn) {
-					_soundHandler.playHeartSound(_o2Active, _o2Value);
-				}
 			}
 		});
 	}
@@ -2020,17 +2025,19 @@ public class MonitorMainScreen extends Activity {
 	/**
      * Should be called if the highest point of one period of the o2-curve is reached to 
      * trigger the sound and blinking heart, while EKG isn't available.
+     * 
+     * @param time - The time of the peak (System.nanoTime()).
      */
-	public void o2Peak() {
-		// If there is no EKG-signal, schedule a blink of the little EKG-heart and, if
-		// activated, the heart-sound in the main GUI thread.
+	public void o2Peak(long time) {
+		// If there is no EKG-signal, schedule, if activated, the heart-sound and a blink of the
+		// little EKG-heart in the main GUI thread.
 		if(!_ekgActive) {
+			if (_ekgSoundOn) {
+				_soundHandler.playHeartSound(true, _o2Value, time);
+			}
 			runOnUiThread(new Runnable() {
 				public void run() {
 					blinkHeart();
-					if (_ekgSoundOn) {
-						_soundHandler.playHeartSound(true, _o2Value);
-					}
 				}
 			});
 		}
@@ -2046,8 +2053,7 @@ public class MonitorMainScreen extends Activity {
 		// every second and displays it.
 		if (run) {
 			if(!_timerActive) {
-				_stopWatchTimer = new Timer();
-				_stopWatchTimer.schedule(new TimerTask() {
+				_stopWatchTask = _scheduler.scheduleWithFixedDelay(new MonitorScheduler.Task() {
 					public void run(){
 						runOnUiThread(new Runnable() {
 							public void run() {
@@ -2061,8 +2067,8 @@ public class MonitorMainScreen extends Activity {
 			}
 		} else {
 			// If the timer should be stopped, cancel the scheduled task
-			if(_stopWatchTimer != null) {
-				_stopWatchTimer.cancel();
+			if(_stopWatchTask != null) {
+				_stopWatchTask.cancel();
 			}
 			_timerActive = false;
 		}
@@ -2093,9 +2099,8 @@ public class MonitorMainScreen extends Activity {
 		// Schedule an automatic increase after _incDecAutoStartDelay ms every _incDecStepTime
 		// until the button is released.
 		_firstAlarmUpperTHUpButtonPressed= true;
-    	if (_incDecTimer != null) _incDecTimer.cancel();
-    	_incDecTimer = new Timer();
-    	_incDecTimer.scheduleAtFixedRate(new TimerTask() {
+    	if (_incDecTask != null) _incDecTask.cancel();
+    	_incDecTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 	        	public void run(){
 	        		if(!_firstAlarmUpperTHUpButtonPressed) {
 	        			this.cancel();
@@ -2152,9 +2157,8 @@ public class MonitorMainScreen extends Activity {
 		// Schedule an automatic decrease after _incDecAutoStartDelay ms every _incDecStepTime
 		// until the button is released.
 		_firstAlarmUpperTHDownButtonPressed= true;
-    	if (_incDecTimer != null) _incDecTimer.cancel();
-    	_incDecTimer = new Timer();
-    	_incDecTimer.scheduleAtFixedRate(new TimerTask() {
+    	if (_incDecTask != null) _incDecTask.cancel();
+    	_incDecTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 	        	public void run(){
 	        		if(!_firstAlarmUpperTHDownButtonPressed) {
 	        			this.cancel();
@@ -2211,9 +2215,8 @@ public class MonitorMainScreen extends Activity {
 		// Schedule an automatic increase after _incDecAutoStartDelay ms every _incDecStepTime
 		// until the button is released.
 		_firstAlarmLowerTHUpButtonPressed= true;
-    	if (_incDecTimer != null) _incDecTimer.cancel();
-    	_incDecTimer = new Timer();
-    	_incDecTimer.scheduleAtFixedRate(new TimerTask() {
+    	if (_incDecTask != null) _incDecTask.cancel();
+    	_incDecTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 	        	public void run(){
 	        		if(!_firstAlarmLowerTHUpButtonPressed) {
 	        			this.cancel();
@@ -2276,9 +2279,8 @@ public class MonitorMainScreen extends Activity {
 		// Schedule an automatic decrease after _incDecAutoStartDelay ms every _incDecStepTime
 		// until the button is released.
 		_firstAlarmLowerTHDownButtonPressed= true;
-    	if (_incDecTimer != null) _incDecTimer.cancel();
-    	_incDecTimer = new Timer();
-    	_incDecTimer.scheduleAtFixedRate(new TimerTask() {
+    	if (_incDecTask != null) _incDecTask.cancel();
+    	_incDecTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 	        	public void run(){
 	        		if(!_firstAlarmLowerTHDownButtonPressed) {
 	        			this.cancel();
@@ -2341,9 +2343,8 @@ public class MonitorMainScreen extends Activity {
 		_secondAlarmUpperTHUpButtonPressed= true;
 		// Schedule an automatic increase after _incDecAutoStartDelay ms every _incDecStepTime
 		// until the button is released.
-    	if (_incDecTimer != null) _incDecTimer.cancel();
-    	_incDecTimer = new Timer();
-    	_incDecTimer.scheduleAtFixedRate(new TimerTask() {
+    	if (_incDecTask != null) _incDecTask.cancel();
+    	_incDecTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 	        	public void run(){
 	        		if(!_secondAlarmUpperTHUpButtonPressed) {
 	        			this.cancel();
@@ -2388,9 +2389,8 @@ public class MonitorMainScreen extends Activity {
 		// Schedule an automatic decrease after _incDecAutoStartDelay ms every _incDecStepTime
 		// until the button is released.
 		_secondAlarmUpperTHDownButtonPressed= true;
-    	if (_incDecTimer != null) _incDecTimer.cancel();
-    	_incDecTimer = new Timer();
-    	_incDecTimer.scheduleAtFixedRate(new TimerTask() {
+    	if (_incDecTask != null) _incDecTask.cancel();
+    	_incDecTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 	        	public void run(){
 	        		if(!_secondAlarmUpperTHDownButtonPressed) {
 	        			this.cancel();
@@ -2435,9 +2435,8 @@ public class MonitorMainScreen extends Activity {
 		// Schedule an automatic increase after _incDecAutoStartDelay ms every _incDecStepTime
 		// until the button is released.
 		_secondAlarmLowerTHUpButtonPressed= true;
-    	if (_incDecTimer != null) _incDecTimer.cancel();
-    	_incDecTimer = new Timer();
-    	_incDecTimer.scheduleAtFixedRate(new TimerTask() {
+    	if (_incDecTask != null) _incDecTask.cancel();
+    	_incDecTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 	        	public void run(){
 	        		if(!_secondAlarmLowerTHUpButtonPressed) {
 	        			this.cancel();
@@ -2482,9 +2481,8 @@ public class MonitorMainScreen extends Activity {
 		// Schedule an automatic decrease after _incDecAutoStartDelay ms every _incDecStepTime
 		// until the button is released.
 		_secondAlarmLowerTHDownButtonPressed= true;
-    	if (_incDecTimer != null) _incDecTimer.cancel();
-    	_incDecTimer = new Timer();
-    	_incDecTimer.scheduleAtFixedRate(new TimerTask() {
+    	if (_incDecTask != null) _incDecTask.cancel();
+    	_incDecTask = _scheduler.scheduleAtFixedRate(new MonitorScheduler.Task() {
 	        	public void run(){
 	        		if(!_secondAlarmLowerTHDownButtonPressed) {
 	        			this.cancel();
@@ -2517,6 +2515,15 @@ public class MonitorMainScreen extends Activity {
 		});
 	}
 	
+	/**
+	 * Returns the shared scheduler for timed tasks of the monitor.
+	 * 
+	 * @return The scheduler.
+	 */
+	MonitorScheduler getScheduler() {
+		return _scheduler;
+	}
+	
 	/**
 	 * Returns the current EKG-value.
 	 * 
@@ -2580,6 +2587,17 @@ public class MonitorMainScreen extends Activity {
 		_updateHandler.updateGui(jsonEvent);
 	}
 	
+	/**
+	 * Triggers a update of the GUI with a new, already decoded event.
+	 * 
+	 * @param e - The new event.
+	 * @param fieldMask - The fields of the event to apply (EventCodec), the
+	 *        other parameters are left untouched.
+	 */
+	public void newEvent(Event e, int fieldMask) {
+		_updateHandler.updateGui(e, fieldMask);
+	}
+	
 	/**
 	 * Triggers a change of the general EKG-curve-pattern and saves it. Start the
 	 * asystole alarm and stops the normal alarm, if necessary.
@@ -2598,8 +2616,8 @@ public class MonitorMainScreen extends Activity {
 			_soundHandler.playAsystoleAlarm(false);
 			checkAlarm();
 			// Stop the parameter blinking if necessary.
-			if (_paramBlinkTimer != null) {
-				_paramBlinkTimer.cancel();
+			if (_paramBlinkTask != null) {
+				_paramBlinkTask.cancel();
 				_paramBlinkActive = false;
 			}
 		}
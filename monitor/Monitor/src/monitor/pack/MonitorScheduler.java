@@ -0,0 +1,248 @@
+/*
+ * Copyright: Universitt Freiburg, 2015
+ */
+
+package monitor.pack;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The scheduler of the timed tasks of the monitor (blinking, auto NIBP, alarm pause, stop watch,
+ * scheduled parameter updates, ...). All tasks share one thread instead of a java.util.Timer thread
+ * each, so the tasks must be short and hand GUI work over to the GUI thread. 
+ * It is used like a Timer: a Task is scheduled once and can be cancelled from anywhere, also from
+ * its own run(). It counts the active tasks and the executions which started late.
+ */
+final class MonitorScheduler {
+	
+	
+  // PUBLIC:
+	
+	/**
+	 * A task of the scheduler, used like a TimerTask.
+	 */
+	abstract static class Task implements Runnable {
+		
+		/**
+		 * Cancels the task, an execution which is running is finished.
+		 * 
+		 * @return False if the task was already cancelled or has run.
+		 */
+		public boolean cancel() {
+			_cancelled = true;
+			Future<?> future = _future;
+			if (future != null) {
+				future.cancel(false);
+			}
+			return finish();
+		}
+		
+		/**
+		 * Marks the task as ended and removes it from the active tasks, only once.
+		 */
+		private boolean finish() {
+			if (_scheduler != null && !_done.getAndSet(true)) {
+				_scheduler._activeTasks.decrementAndGet();
+				return true;
+			}
+			return false;
+		}
+		
+		/**
+		 * Runs the task from the thread of the scheduler and measures how late it starts.
+		 */
+		private void execute() {
+			if (_cancelled) {
+				return;
+			}
+			long late = System.nanoTime() - _due;
+			_scheduler.countExecution(late);
+			if (_period > 0 && !_fixedDelay) {
+				_due += _period;
+			}
+			try {
+				run();
+			} catch (RuntimeException ex) {
+				// An exception stopped the whole Timer, here it only ends this execution.
+				System.err.println(ex);
+			}
+			if (_period == 0) {
+				finish();
+			} else if (_fixedDelay) {
+				_due = System.nanoTime() + _period;
+			}
+		}
+		
+		private volatile MonitorScheduler _scheduler;
+		private volatile Future<?> _future;
+		private volatile boolean _cancelled;
+		private final AtomicBoolean _done = new AtomicBoolean();
+		// The time the next execution is due (System.nanoTime()) and the period in ns, 0 if it runs once.
+		private long _due;
+		private long _period;
+		// True if the period is counted from the end of the last execution.
+		private boolean _fixedDelay;
+	}
+	
+	/**
+	 * Constructor which starts the thread of the scheduler.
+	 */
+	MonitorScheduler() {
+		_executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "MonitorScheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Runs a task once after a delay.
+	 * 
+	 * @param task - The task, it can be scheduled once.
+	 * @param delay - The delay in ms.
+	 * @return The task.
+	 */
+	Task schedule(Task task, long delay) {
+		return start(task, delay, 0, false);
+	}
+	
+	/**
+	 * Runs a task repeatedly at a fixed rate, until it is cancelled.
+	 * 
+	 * @param task - The task, it can be scheduled once.
+	 * @param delay - The delay of the first execution in ms.
+	 * @param period - The time between the starts of two executions in ms.
+	 * @return The task.
+	 */
+	Task scheduleAtFixedRate(Task task, long delay, long period) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("Non-positive period.");
+		}
+		return start(task, delay, period, false);
+	}
+	
+	/**
+	 * Runs a task repeatedly with a fixed delay, until it is cancelled. Like Timer.schedule(task,
+	 * delay, period), a late execution delays all following ones.
+	 * 
+	 * @param task - The task, it can be scheduled once.
+	 * @param delay - The delay of the first execution in ms.
+	 * @param period - The time between the end of an execution and the start of the next one in ms.
+	 * @return The task.
+	 */
+	Task scheduleWithFixedDelay(Task task, long delay, long period) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("Non-positive period.");
+		}
+		return start(task, delay, period, true);
+	}
+	
+	/**
+	 * Cancels all tasks and stops the thread.
+	 */
+	void shutdown() {
+		_executor.shutdownNow();
+	}
+	
+	/**
+	 * @return The number of tasks which are scheduled and not yet ended or cancelled.
+	 */
+	int getActiveTasks() {
+		return _activeTasks.get();
+	}
+	
+	/**
+	 * @return The number of executions so far.
+	 */
+	long getExecutions() {
+		return _executions.get();
+	}
+	
+	/**
+	 * @return The number of executions which started more than LATE_TOLERANCE ms after their time.
+	 */
+	long getLateExecutions() {
+		return _lateExecutions.get();
+	}
+	
+	/**
+	 * @return The largest delay of an execution against its time in ms.
+	 */
+	long getMaxLateness() {
+		return TimeUnit.NANOSECONDS.toMillis(_maxLateness.get());
+	}
+	
+	/**
+	 * @return The number of threads of the scheduler.
+	 */
+	int getThreadCount() {
+		return _executor.getPoolSize();
+	}
+	
+	
+  // PRIVATE:
+	
+	private Task start(final Task task, long delay, long period, boolean fixedDelay) {
+		if (task._scheduler != null) {
+			throw new IllegalStateException("Task already scheduled.");
+		}
+		task._scheduler = this;
+		task._due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+		task._period = TimeUnit.MILLISECONDS.toNanos(period);
+		task._fixedDelay = fixedDelay;
+		_activeTasks.incrementAndGet();
+		Runnable command = new Runnable() {
+			public void run() {
+				task.execute();
+			}
+		};
+		try {
+			if (period > 0 && fixedDelay) {
+				task._future = _executor.scheduleWithFixedDelay(command, delay, period, TimeUnit.MILLISECONDS);
+			} else if (period > 0) {
+				task._future = _executor.scheduleAtFixedRate(command, delay, period, TimeUnit.MILLISECONDS);
+			} else {
+				task._future = _executor.schedule(command, delay, TimeUnit.MILLISECONDS);
+			}
+		} catch (RejectedExecutionException ex) {
+			// The scheduler is shut down, the task never runs.
+			task.cancel();
+			return task;
+		}
+		// The task may have been cancelled before its future was set.
+		if (task._cancelled) {
+			task._future.cancel(false);
+		}
+		return task;
+	}
+	
+	private void countExecution(long late) {
+		_executions.incrementAndGet();
+		if (late > LATE_TOLERANCE) {
+			_lateExecutions.incrementAndGet();
+		}
+		long max = _maxLateness.get();
+		while (late > max && !_maxLateness.compareAndSet(max, late)) {
+			max = _maxLateness.get();
+		}
+	}
+	
+	// FINAL MEMBERS:
+	// An execution which starts later than this (in ns) counts as late.
+	private static final long LATE_TOLERANCE = TimeUnit.MILLISECONDS.toNanos(20);
+	private final ScheduledThreadPoolExecutor _executor;
+	// Statistics.
+	private final AtomicInteger _activeTasks = new AtomicInteger();
+	private final AtomicLong _executions = new AtomicLong();
+	private final AtomicLong _lateExecutions = new AtomicLong();
+	private final AtomicLong _maxLateness = new AtomicLong();
+}
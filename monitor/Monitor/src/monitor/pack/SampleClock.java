@@ -0,0 +1,194 @@
+package monitor.pack;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//Sampling clock of the curves. A thread of its own advances the SignalEngine at the fixed sweep rate and
+//writes the samples into a ring buffer with a single producer (this thread) and a single consumer (the render
+//thread). The sweep speed and the heart peaks (beep, blink) so no longer depend on the frame rate of the
+//render thread, a frame which is drawn late just takes more samples out of the ring.
+//If the renderer stops taking samples (no surface), the ring fills up and the clock waits, like the curves
+//stopped with the renderer before.
+class SampleClock implements Runnable {
+	//Channels of the ring buffer
+	static final int ECG = 0;
+	static final int BP = 1;
+	static final int SPO2 = 2;
+	static final int CO2 = 3;
+	//Samples per second of every curve
+	static final int SAMPLE_RATE = 60;
+	//Time between two samples in ns
+	static final long PERIOD = 1000000000L / SAMPLE_RATE;
+	//Size of the ring buffer, a power of two, about one second of samples
+	private static final int CAPACITY = 64;
+	//If the clock thread itself was stalled for longer, the missed samples are skipped instead of
+	//being produced in a burst
+	private static final int MAX_CATCH_UP = 8;
+
+	private final SignalEngine mEngine;
+	private final float[] mEcg = new float[CAPACITY];
+	private final float[] mBp = new float[CAPACITY];
+	private final float[] mSpo2 = new float[CAPACITY];
+	private final float[] mCo2 = new float[CAPACITY];
+	//Scratch buffers of the clock thread for SignalEngine.fillFrame
+	private final float[] mEcgChunk = new float[MAX_CATCH_UP];
+	private final float[] mBpChunk = new float[MAX_CATCH_UP];
+	private final float[] mSpo2Chunk = new float[MAX_CATCH_UP];
+	private final float[] mCo2Chunk = new float[MAX_CATCH_UP];
+	//Number of samples written, only changed by the clock thread
+	private final AtomicLong mHead = new AtomicLong();
+	//Number of samples read, only changed by the render thread
+	private final AtomicLong mTail = new AtomicLong();
+	//Bit mask of the channels which are calculated, a curve which is not shown triggers no peaks
+	private volatile int mChannels = (1 << ECG) | (1 << BP) | (1 << SPO2) | (1 << CO2);
+	private volatile boolean mRunning = false;
+	private Thread mThread;
+
+	//Statistics
+	private volatile long mProducedSamples = 0;
+	private volatile long mSkippedSamples = 0;
+	private volatile long mOverruns = 0;
+	private volatile long mMaxDrift = 0;
+	private volatile long mDriftSum = 0;
+	private volatile long mDriftCount = 0;
+
+	//Constructor
+	SampleClock(SignalEngine engine) {
+		mEngine = engine;
+	}
+
+	//Start the clock thread
+	synchronized void start() {
+		if(mRunning)
+			return;
+		mRunning = true;
+		mThread = new Thread(this, "SampleClock");
+		mThread.setDaemon(true);
+		mThread.setPriority(Thread.MAX_PRIORITY);
+		mThread.start();
+	}
+
+	//Stop the clock thread
+	synchronized void stop() {
+		mRunning = false;
+		if(mThread != null) {
+			LockSupport.unpark(mThread);
+			mThread = null;
+		}
+	}
+
+	//Enable/Disable the calculation of a channel
+	void setChannelEnabled(int channel, boolean enabled) {
+		synchronized(this) {
+			if(enabled)
+				mChannels |= 1 << channel;
+			else
+				mChannels &= ~(1 << channel);
+		}
+	}
+
+	//Copy up to max samples of every channel out of the ring, called by the render thread only.
+	//Returns the number of samples copied.
+	int read(float[] ecg, float[] bp, float[] spo2, float[] co2, int max) {
+		long tail = mTail.get();
+		int n = (int)Math.min(mHead.get() - tail, max);
+		for(int i = 0; i < n; i++) {
+			int index = (int)(tail + i) & (CAPACITY - 1);
+			ecg[i] = mEcg[index];
+			bp[i] = mBp[index];
+			spo2[i] = mSpo2[index];
+			co2[i] = mCo2[index];
+		}
+		// Hand the slots back to the clock thread
+		mTail.lazySet(tail + n);
+		return n;
+	}
+
+	public void run() {
+		long start = System.nanoTime();
+		// Number of sample periods passed, including skipped samples
+		long ticks = 0;
+		while(mRunning) {
+			long now = System.nanoTime();
+			// Sample k is due at start + k * PERIOD
+			int n = (int)Math.min((now - start) / PERIOD + 1 - ticks, Integer.MAX_VALUE);
+			if(n > MAX_CATCH_UP) {
+				// The clock thread was stalled, skip the missed samples
+				mSkippedSamples += n - 1;
+				ticks += n - 1;
+				n = 1;
+			}
+			int free = CAPACITY - (int)(mHead.get() - mTail.get());
+			if(free == 0 && n > 0) {
+				// The renderer takes no samples, wait and go on with the current time later
+				mOverruns++;
+				LockSupport.parkNanos(PERIOD);
+				start = System.nanoTime();
+				ticks = 0;
+				continue;
+			}
+			if(n > 0) {
+				n = Math.min(n, free);
+				// Delay of the first sample against its due time
+				long drift = now - (start + ticks * PERIOD);
+				mDriftSum += drift;
+				mDriftCount++;
+				if(drift > mMaxDrift)
+					mMaxDrift = drift;
+				produce(n, start + ticks * PERIOD);
+				ticks += n;
+			}
+			long wait = start + ticks * PERIOD - System.nanoTime();
+			if(wait > 0)
+				LockSupport.parkNanos(wait);
+		}
+	}
+
+	//Calculate n samples, the first one due at the given time, and write them into the ring
+	private void produce(int n, long time) {
+		int channels = mChannels;
+		// The peaks get the due time of their sample
+		mEngine.setFrameTime(time, PERIOD);
+		mEngine.fillFrame((channels & (1 << ECG)) != 0 ? mEcgChunk : null,
+				(channels & (1 << BP)) != 0 ? mBpChunk : null,
+				(channels & (1 << SPO2)) != 0 ? mSpo2Chunk : null,
+				(channels & (1 << CO2)) != 0 ? mCo2Chunk : null, n);
+		long head = mHead.get();
+		for(int i = 0; i < n; i++) {
+			int index = (int)(head + i) & (CAPACITY - 1);
+			mEcg[index] = mEcgChunk[i];
+			mBp[index] = mBpChunk[i];
+			mSpo2[index] = mSpo2Chunk[i];
+			mCo2[index] = mCo2Chunk[i];
+		}
+		// Publish the samples to the render thread
+		mHead.lazySet(head + n);
+		mProducedSamples += n;
+	}
+
+	//Samples calculated so far
+	long getProducedSamples() {
+		return mProducedSamples;
+	}
+
+	//Samples skipped because the clock thread was stalled
+	long getSkippedSamples() {
+		return mSkippedSamples;
+	}
+
+	//Number of times the ring was full because the renderer took no samples
+	long getOverruns() {
+		return mOverruns;
+	}
+
+	//Largest delay of a sample against its due time in ns
+	long getMaxDrift() {
+		return mMaxDrift;
+	}
+
+	//Average delay of the clock thread against the due time of the samples in ns
+	long getAverageDrift() {
+		long count = mDriftCount;
+		return count == 0 ? 0 : mDriftSum / count;
+	}
+}
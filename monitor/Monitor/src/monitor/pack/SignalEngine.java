@@ -0,0 +1,797 @@
+
+package monitor.pack;
+
+/**
+
+ * The signal engine, which provides patterns for heartrhythm,
+ * blood pressure, O2 saturation and respiration.
+ * It has no Android dependencies: heart peaks, O2 peaks and the end of a
+ * heart cycle are reported to a SignalListener, so the engine can also run
+ * off-device.
+ *
+
+ * @author Jonas Reinmuth
+
+ * @version 1.0
+
+ */
+
+public class SignalEngine {
+	
+	// Receives the peak and beat events of the signal engine.
+	// The peaks carry the due time of the peak sample in System.nanoTime() units (see setFrameTime()), so a sound
+	// can be lined up with the sample instead of the moment the frame was calculated.
+	public interface SignalListener {
+		// A QRS peak was passed: acoustic signal and heart blinking.
+		void onHeartPeak(long time);
+		// A peak of the O2 curve was passed.
+		void onO2Peak(long time);
+		// A heart cycle ended: random variation of the displayed values.
+		void onHeartCycle();
+	}
+	
+	// The last position of the patterns, positions are 16.16 fixed point values (see WaveformAtlas).
+	// The index counters are set back to the beginning once they pass it.
+	private static final int LASTPOSITION = (WaveformAtlas.SOURCE_SIZE - 1) * WaveformAtlas.ONE;
+	// Fixed point value 1.0.
+	private static final int ONE = WaveformAtlas.ONE;
+	
+	// Immutable snapshot of the settings of the monitor. Every change creates a new snapshot and publishes it
+	// at once, the sampling thread applies the latest snapshot at the beginning of a frame. So the sampling
+	// thread always sees a consistent set of values and needs no locks. The fields are never changed after
+	// the snapshot was published.
+	private static final class Parameters {
+		int heartrate;
+		int respirationrate;
+		int maxbloodpressure;
+		int minbloodpressure;
+		int O2MaxValue;
+		int CO2MaxValue;
+		boolean coldfinger;
+		// The last requested heart rhythm.
+		Event.HeartPattern rhythm;
+		// Sequence numbers of the last rhythm change and the last defibrillation, to apply them in order.
+		int rhythmcommand;
+		int shockcommand;
+		// Sequence number of the last command.
+		int command;
+		
+		Parameters() {
+		}
+		
+		Parameters(Parameters p) {
+			heartrate = p.heartrate;
+			respirationrate = p.respirationrate;
+			maxbloodpressure = p.maxbloodpressure;
+			minbloodpressure = p.minbloodpressure;
+			O2MaxValue = p.O2MaxValue;
+			CO2MaxValue = p.CO2MaxValue;
+			coldfinger = p.coldfinger;
+			rhythm = p.rhythm;
+			rhythmcommand = p.rhythmcommand;
+			shockcommand = p.shockcommand;
+			command = p.command;
+		}
+	}
+	// Event heartpattern which stores the current heartpattern.
+	private Event.HeartPattern heartrhythm;
+	// If the heart pattern gets changed by the controller, it is first stored in nextrhythm.
+	// The pattern is finally changed if the end of the array with the previous pattern is reached.
+	private Event.HeartPattern nextrhythm;
+	// The counter in which the current position of the array is stored (fixed point). To get the next
+	// position, use the increment() method.
+	private int index;
+	// Flag which is set if the patient has coldfingers.
+	private boolean coldfinger;
+	// Will be used to store the previous position in the array to see if the array has been looped.
+	private int oldindex;
+	// The CO2 curve gets its own index counter, because it implicates the breathing of the patient
+	// and breathing isn't connected to the heartrate.
+	private int CO2index;
+	// The basicheartrate is the heart rate which is achieved when the index counter is 
+	// incremented by 1. It is used to calculate how the value "index" has to be incremented
+	// to achieve the actual heart rate.
+	private final int basicheartrate;
+	// The current heart rate.
+	private int heartrate;
+	// The current breathing rate.
+	private int respirationrate;
+	// Systolic blood pressure.
+	private int maxbloodpressure;
+	// Diastolic blood pressure.
+	private int minbloodpressure;
+	// Current O2 value.
+	private int O2MaxValue;
+	// Current CO2 value.
+	private int CO2MaxValue;
+	// Flag which is set when acoustic signal and heart blinking in the monitor object was triggered, so it won't
+	// trigger in the same peak multiple times.
+	private boolean acousticsignaltriggered;
+	// Flag which is set when a O2 threshold value is reached to indicate a peak in the O2 curve.
+	private boolean O2peak;
+	// Flag which is set when pulse of the pacemaker was triggered. Used in the pacemaker rhythm.
+	private boolean pacepulse;
+	// A random number which is changed in every cycle of the absolute arrythmia rhythm. Inserts randomly QRS Peaks
+	private double aapeak;
+	// Stores the previous randomnumber of the absolute arrhytmia rhythm.
+	private double aapreviouspeak;
+	// Flag which is set to true if aapeak has been calculated.
+	private boolean aapeakcalc;
+	// A counter used in the avblock rhythm, counts every peak and gets reseted if a peak is skipped.
+	private int avblockpeak;
+	// Number of samples generated so far (calls of increment()).
+	private long samplecount;
+	// Due time of the sample framesample and the time between two samples, set by setFrameTime().
+	// If no time was set, the peaks get the current time.
+	private long frametime;
+	private long frameperiod;
+	private long framesample;
+	// Receives the peak and beat events.
+	private final SignalListener listener;
+	// The latest settings, written by the change methods (synchronized) and read by the sampling thread.
+	private volatile Parameters parameters;
+	// The settings the sampling thread works with at the moment. The fields heartrate to coldfinger
+	// are copies of them, only used by the sampling thread.
+	private Parameters applied;
+	
+	// Constructor
+	// Takes the listener which gets the peak and beat events, so the engine can trigger blinking and sound in
+	// the monitor. The listener may be null.
+	public SignalEngine(SignalListener l) {
+		
+		// Set listener.
+		listener = l;
+		// Initialize class variables. The patterns are stored in the shared WaveformAtlas.
+		index = 0;
+		oldindex = 0;
+		CO2index = 0;
+		basicheartrate = 36;
+		heartrate = 50;
+		respirationrate = 20;
+		maxbloodpressure = 160;
+		minbloodpressure = 80;
+		O2MaxValue = 99;
+		CO2MaxValue = 40;
+		acousticsignaltriggered = false;
+		O2peak = false;
+		pacepulse = false;
+		aapeak = 1;
+		aapreviouspeak = 1;
+		aapeakcalc = false;
+		avblockpeak = 0;
+		heartrhythm = Event.HeartPattern.SINE;
+		nextrhythm = Event.HeartPattern.AVBLOCK;
+		coldfinger = false;
+		// Publish the initial settings.
+		Parameters p = new Parameters();
+		p.heartrate = heartrate;
+		p.respirationrate = respirationrate;
+		p.maxbloodpressure = maxbloodpressure;
+		p.minbloodpressure = minbloodpressure;
+		p.O2MaxValue = O2MaxValue;
+		p.CO2MaxValue = CO2MaxValue;
+		p.coldfinger = coldfinger;
+		applied = p;
+		parameters = p;
+	}
+	
+	// Changes the heart rhythm curve to a new pattern.
+	// If the current heart rhythm is Asystole the heart rhythm gets changed immediately.
+	// Like all changes it is applied by the sampling thread at the beginning of the next frame.
+	public synchronized void changeHeartRhythm(Event.HeartPattern rhythm) {
+		Parameters p = new Parameters(parameters);
+		p.rhythm = rhythm;
+		p.rhythmcommand = ++p.command;
+		parameters = p;
+	}
+	
+	// Sets the heart rate to a new value.
+	public synchronized void changeHeartRate(int newValue) {
+		Parameters p = new Parameters(parameters);
+		p.heartrate = newValue;
+		parameters = p;
+	}
+	
+	// Sets new values for systolic and diastolic blood pressure. 
+	public synchronized void changeBloodPressure(int systolicBloodPressure, int diastolicBloodPressure) {
+		Parameters p = new Parameters(parameters);
+		p.maxbloodpressure = systolicBloodPressure;
+		p.minbloodpressure = diastolicBloodPressure;
+		parameters = p;
+	}
+	
+	// Sets the O2pattern to normal oder coldfinger.
+	public synchronized void changeO2pattern(Event.O2Pattern pattern) {
+		Parameters p = new Parameters(parameters);
+		if (pattern == Event.O2Pattern.COLDFINGER)
+			p.coldfinger = true;
+		else
+			p.coldfinger = false;
+		parameters = p;
+	}
+	// Sets the oxygen saturation to a new value.
+	public synchronized void changeO2Value(int newValue) {
+		Parameters p = new Parameters(parameters);
+		p.O2MaxValue = newValue;
+		parameters = p;
+	}
+	
+	// Sets the respirationrate to a new value.
+	public synchronized void changeRespirationRate(int newValue) {
+		Parameters p = new Parameters(parameters);
+		p.respirationrate = newValue;
+		parameters = p;
+	}
+	
+	// Sets the CO2 ejection to a new value
+	public synchronized void changeCO2Value(int newValue) {
+		Parameters p = new Parameters(parameters);
+		p.CO2MaxValue = newValue;
+		parameters = p;
+	}
+	
+	// Applies the latest settings, if they changed. Only called by the sampling thread, once per frame.
+	private void applyParameters() {
+		final Parameters p = parameters;
+		if (p == applied)
+			return;
+		heartrate = p.heartrate;
+		respirationrate = p.respirationrate;
+		maxbloodpressure = p.maxbloodpressure;
+		minbloodpressure = p.minbloodpressure;
+		O2MaxValue = p.O2MaxValue;
+		CO2MaxValue = p.CO2MaxValue;
+		coldfinger = p.coldfinger;
+		// Apply rhythm change and defibrillation in the order they were requested.
+		boolean rhythmchanged = p.rhythmcommand > applied.command;
+		boolean shocked = p.shockcommand > applied.command;
+		if (rhythmchanged && shocked && p.shockcommand < p.rhythmcommand) {
+			shock();
+			applyHeartRhythm(p.rhythm);
+		}
+		else {
+			if (rhythmchanged)
+				applyHeartRhythm(p.rhythm);
+			if (shocked)
+				shock();
+		}
+		applied = p;
+	}
+	
+	// Stores the new heart rhythm in nextrhythm, which is applied at the end of the current heart cycle.
+	// If the current heart rhythm is Asystole the heart rhythm gets changed immediately.
+	private void applyHeartRhythm(Event.HeartPattern rhythm) {
+		nextrhythm = rhythm;
+		if (heartrhythm == Event.HeartPattern.ASYSTOLE) {
+			heartrhythm = rhythm;
+			index = 0;
+			CO2index = 0;
+		}
+	}
+
+	// Increments the index counter depending on the current heart rate. 
+	// Closes the loop if the end of the array is reached.
+	// Changed settings are applied before.
+	public void increment() {
+		applyParameters();
+		step();
+	}
+	
+	// Increments the index counter depending on the current heart rate.
+	private void step() {
+		int inc;
+		// The heartrate determines how fast it is gone through the array. There also some rhythms/patterns in which the heartrate setting 
+		// has to be ignored because the heartrate is fixed. This is the case in CPR, Asystole and ventricular flutter or fibrillation.
+		if (heartrhythm == Event.HeartPattern.CPR || heartrhythm == Event.HeartPattern.VENTFLUTTER || heartrhythm == Event.HeartPattern.VENTFIBRI)
+			inc = ONE;
+		else if (heartrhythm == Event.HeartPattern.ASYSTOLE)
+			inc = ONE * 3 / 10;
+		else
+			// Calculate how the counter has to be incremented to achieve the current heartrate.
+			inc = heartrate * ONE / basicheartrate;
+		// Calculate how the counter has to be incremented to achieve the current respiration rate.
+		advance(inc, respirationrate * ONE / basicheartrate);
+	}
+	
+	// Moves the index counters forward by the given fixed point increments.
+	// Closes the loop if the end of the array is reached.
+	private void advance(int inc, int CO2inc) {
+		// Save the last used position in "oldindex"
+		oldindex = index;
+		++samplecount;
+		// Increment the index counter.
+		index += inc;
+		// Increment the index counter for CO2 ejection.
+		CO2index += CO2inc;
+		// If the index counter reached the end of the array, set it back to the beginning of the array.
+		// Also apply the next pattern.
+		if (index > LASTPOSITION) {
+			index = index - LASTPOSITION;
+			heartrhythm = nextrhythm;
+			// In the AV Block rhythm every fourth peak is skipped. The counter therefore is counted up here if the end
+			// of the array is reached.
+			++avblockpeak;
+			if(avblockpeak > 3)
+				avblockpeak = 0;
+			// Call randomvariationfunctions in monitor for heartrate, blood pressure, O2 and CO2 curve.
+			// Skip if pattern is asystole, ventflutter or fibrillation because the value in the monitor is 0 for these patterns.
+			if (heartrhythm != Event.HeartPattern.ASYSTOLE && heartrhythm != Event.HeartPattern.VENTFLUTTER && heartrhythm != Event.HeartPattern.VENTFIBRI) {
+				if (listener != null)
+					listener.onHeartCycle();
+			}
+		}
+		// If the CO2 index counter reached the end of the array, set it back to the beginning of the array.
+		if (CO2index > LASTPOSITION)
+			CO2index = CO2index - LASTPOSITION;
+	}
+	
+	// Calculates the output value of a heart pattern. Uses a heart pattern of the WaveformAtlas and a fixed point
+	// position as input. Interpolates the pattern if the position is a decimal.
+	private double calcHeartRateValue(int pattern, int position) {
+		// A scaling factor to scale the patterns to the optimal height.
+		final double scale = 1.4;
+		float value = WaveformAtlas.sampleFloor(pattern, position);
+		// Interpolate if position is a decimal, only the interpolated part is scaled.
+		if ((position & (ONE - 1)) != 0)
+			return value + (WaveformAtlas.sample(pattern, position) - value) * scale;
+		// Otherwise just read out the value of the pattern if the position is a natural number.
+		return value * scale;
+	}
+	
+	// Calculates the output value for the bloodpressure curve. Uses a fixed point position as input. Interpolates
+	// the pattern if the position is a decimal.
+	private double calcBloodPressureValue(int position) {
+		return WaveformAtlas.sample(WaveformAtlas.BLOODPRESSURE, position) * 0.55f * (maxbloodpressure - minbloodpressure);
+	}
+	
+	// Calculates the output value for the oxygen saturation curve. Uses a fixed point position as input. Interpolates
+	// the pattern if the position is a decimal.
+	private double calcSPO2Value(int position) {
+		return WaveformAtlas.sample(WaveformAtlas.SPO2, position) * O2MaxValue;
+	}
+	
+	// Triggers acoustic signal and heart blinking in monitor object if a peak value is exceeded. Uses the current heartratevalue
+	// and a threshold value which triggers the sound and blinking once exceeded.
+	private void triggerBeepBlink(double heartratevalue, int threshold) {
+		if (acousticsignaltriggered == false) {
+			if (heartratevalue >= threshold) {
+				// blink and beep -> call in the monitor object
+				if (listener != null)
+					listener.onHeartPeak(sampleTime());
+				// Indicate it has been blinked and beeped.
+				acousticsignaltriggered = true;
+			}
+		}
+		else {
+			// Indicate the peak has been passed and it can be blinked and beeped again.
+			if (heartratevalue <= threshold) {
+				acousticsignaltriggered = false;
+			}
+		}
+	}
+	
+	// Calls the O2peak function in the monitor object which triggers a blink and a sound if there is no
+	// EKG curve. Uses the current O2saturation value and a threshold value that has to be exceeded for the call.
+	private void triggerO2peak(double O2Value, int threshold) {
+		// Call function in monitor if it hasn't been already triggered in this peak and a threshold is exceeded.
+		if (O2peak == false) {
+			if (O2Value >= threshold) {
+				if (listener != null)
+					listener.onO2Peak(sampleTime());
+				// Indicate the function has been called.
+				O2peak = true;
+			}
+		}
+		else {
+			// Reset flag for the next peak.
+			if (O2Value <= threshold)
+				O2peak = false;
+		}
+	}
+	
+	// Returns the current heart rate value in dependence to the index counter. Considers the current rhythm and
+	// calls a method in the Monitor class to generate the relevant acoustic signal.
+	public double getHeartRateValue() {
+		// The Value in the current position of the array. Gets calculated in the method and returned.
+		double heartratevalue;
+		// Threshold value at which acoustic signal and heart blinking is triggered when exceeded.
+		int threshold = 50;
+		// ------ CALCULATION FOR HEARTRATEVALUE WITH sinerhythm ------
+		if (heartrhythm == Event.HeartPattern.SINE) {
+			heartratevalue = calcHeartRateValue(WaveformAtlas.SINE, index);
+			// Trigger acoustic signal and heart blinking in monitor object.
+			triggerBeepBlink(heartratevalue, threshold);
+		}
+		// ------ CALCULATION FOR HEARTRATEVALUE WITH ABSOLUTE ARRYTHMIA (also LBBBAA)------
+		else if (heartrhythm == Event.HeartPattern.ARRYTHMIC || heartrhythm == Event.HeartPattern.LEFTBLOCKAA) {
+			// If the array has been looped set aapeakcalc to false so aapeak gets recalculated.
+			if (index < oldindex) {
+				aapeakcalc = false;
+			}
+			// Get the random threshold for skipping or inserting a QRS peak if not already calculated.
+			if (aapeakcalc == false) {
+				// Save previous random number.
+				aapreviouspeak = aapeak;
+				// Get random number.
+				aapeak = Math.random();
+				// Indicate random number has been calculated.
+				aapeakcalc = true;
+			}
+			// Between 48 and 66 the QRS Peak is stored in the "sinerhythm" array which has the same shape in the 
+			// absolute arrhythmia rhythm. This peak will be randomly inserted in the AA rhythm.
+			if (index <= 20 * ONE) {
+				// Randomly create QRS peak in the beginning of the array.
+				if (aapeak < 0.5) {
+					int newindex = index + 48 * ONE;
+					// Differentiate between AA and LBBBAA.
+					if (heartrhythm == Event.HeartPattern.ARRYTHMIC)
+						// Absolute Arrythmia with sine pattern.
+						heartratevalue = calcHeartRateValue(WaveformAtlas.SINE, newindex);
+					else
+						// Absolute Arrythmia with left bundle branch block pattern.
+						heartratevalue = calcHeartRateValue(WaveformAtlas.LBBB, newindex);
+				}
+				// Or simulate atrial fibrillation with random values.
+				else{
+					heartratevalue = (Math.random() * 7 - 3.5);
+				}
+			}
+			else if (index >= 48 * ONE && index <= 68 * ONE) {
+				// Create atrial fibrillation in the middle of the array.
+				if (aapeak < 0.5) {
+					heartratevalue = (Math.random() * 7 - 3.5);
+				}
+				// Or create QRS peak in the middle of the array.
+				else {
+					// Differentiate between AA and LBBBAA.
+					if (heartrhythm == Event.HeartPattern.ARRYTHMIC)
+						// Absolute Arrythmia with sine pattern.
+						heartratevalue = calcHeartRateValue(WaveformAtlas.SINE, index);
+					else
+						// Absolute Arrythmia with left bundle branch block pattern.
+						heartratevalue = calcHeartRateValue(WaveformAtlas.LBBB, index);
+				}
+			}
+			// Between the peaks always fibrillate with random values.
+			else
+				heartratevalue = (Math.random() * 7 - 3.5);
+			// Trigger acoustic signal and heart blinking in monitor object.
+			triggerBeepBlink(heartratevalue, threshold);
+		}
+		// ------ CALCULATION FOR HEARTRATEVALUE WITH AVBLOCK RHYTHM ------
+		else if (heartrhythm == Event.HeartPattern.AVBLOCK) {
+			// The fourth peak gets skipped
+			if (avblockpeak == 3) {
+				// QRS Peak starts at index 49 in the array. After this point we just insert zeros.
+				if (index > 48 * ONE)
+					heartratevalue = 0;
+				// We have to make sure the T zone of the pattern doesn't get cut if we shift the pattern to the right,
+				// so we insert the end of the last pattern in the beginning of the current one.
+				else if (index < ((avblockpeak - 1) * 6) * ONE)
+					heartratevalue = calcHeartRateValue(WaveformAtlas.SINE, index + (99 - ((avblockpeak - 1) * 6)) * ONE);
+				else
+					heartratevalue = calcHeartRateValue(WaveformAtlas.SINE, index);
+			}
+			// avblockpeak counts up from zero to three. Every time the array is looped, the QRS Peak gets delayed more.
+			else {
+				if (index > 48 * ONE)
+					heartratevalue = calcHeartRateValue(WaveformAtlas.SINE, index - (avblockpeak * 6) * ONE);
+				// We have to make sure the T zone of the pattern doesn't get cut if we shift the pattern to the right,
+				// so we insert the end of the last pattern in the beginning of the current one.
+				else if (index < ((avblockpeak - 1) * 6) * ONE)
+					heartratevalue = calcHeartRateValue(WaveformAtlas.SINE, index + (99 - ((avblockpeak - 1) * 6)) * ONE);
+				else
+					heartratevalue =calcHeartRateValue(WaveformAtlas.SINE, index);
+			}
+			// Trigger acoustic signal and heart blinking in monitor object.
+			triggerBeepBlink(heartratevalue, threshold);
+		}
+		// ------ CALCULATION FOR HEARTRATEVALUE WITH LEFT BUNDLE BRANCH BLOCK RHYTHM ------
+		else if (heartrhythm == Event.HeartPattern.LEFTBLOCK) {
+			heartratevalue = calcHeartRateValue(WaveformAtlas.LBBB, index);
+			// Trigger acoustic signal and heart blinking in monitor object.
+			triggerBeepBlink(heartratevalue, threshold);
+		}
+		// ------ CALCULATION FOR HEARTRATEVALUE WITH STEMI RHYTHM ------
+		else if (heartrhythm == Event.HeartPattern.STEMI) {
+			heartratevalue = calcHeartRateValue(WaveformAtlas.STEMI, index);
+			// Trigger acoustic signal and heart blinking in monitor object.
+			triggerBeepBlink(heartratevalue, threshold + 20);
+		}
+		// ------ CALCULATION FOR HEARTRATEVALUE WITH PACEMAKER RHYTHM ------
+		else if(heartrhythm == Event.HeartPattern.PACE) {
+			// A scaling factor to scale the patterns to the optimal height.
+			heartratevalue = calcHeartRateValue(WaveformAtlas.PACE, index);
+			// Adjust the peak of the pacemaker, so it looks more similar in every loop.
+			if (pacepulse == false) {
+				if (heartratevalue >= 40) {
+					heartratevalue = 98;
+					pacepulse = true;
+				}
+			}
+			else {
+				if (index <= 10 * ONE)
+					pacepulse = false;
+			}
+			// Trigger acoustic signal and heart blinking in monitor object.
+			triggerBeepBlink(heartratevalue, threshold);
+		}
+		// ------ CALCULATION FOR HEARTRATEVALUE WITH VENTRICULAR FLUTTER RHYTHM ------
+		else if(heartrhythm == Event.HeartPattern.VENTFLUTTER) {
+			heartratevalue = WaveformAtlas.sampleFloor(WaveformAtlas.VENTFLUTTER, index);
+		}
+		// ------ CALCULATION FOR HEARTRATEVALUE WITH VENTRICULAR FIBRILLATION RHYTHM ------
+		else if(heartrhythm == Event.HeartPattern.VENTFIBRI) {
+			heartratevalue = WaveformAtlas.sampleFloor(WaveformAtlas.VENTFIBRI, index) + (Math.random() * 6 - 3);
+		}
+		// ------ CALCULATION FOR HEARTRATEVALUE WITH CPR ------
+		else if(heartrhythm == Event.HeartPattern.CPR) {
+			heartratevalue = WaveformAtlas.sampleFloor(WaveformAtlas.CPR, index);
+		}
+		// ------ CALCULATION FOR HEARTRATEVALUE WITH ASYSTOLE ------
+		else if(heartrhythm == Event.HeartPattern.ASYSTOLE) {
+			heartratevalue = WaveformAtlas.sampleFloor(WaveformAtlas.ASYSTOLE, index);
+		}
+		else
+			heartratevalue = 0;
+		return heartratevalue;
+	}
+	
+	// Returns the current blood pressure value in dependence to the index counter.
+	public double getBloodPressureValue() {
+		double value;
+		if (heartrhythm == Event.HeartPattern.ARRYTHMIC || heartrhythm == Event.HeartPattern.LEFTBLOCKAA) {
+			// For the bloodpressure curve in aa rhythm we have to consider if the previous heart beat has been taken or skipped.
+			// With the previous and the actual random number ("aapreviouspeak, aapeak") there are four possibilities.
+			if (aapeak < 0.5) {
+				if (aapreviouspeak >= 0.5 && index < 6 * ONE) {
+					value = calcBloodPressureValue(index);
+				}
+				else {
+					int newindex = index + 52 * ONE;
+					if (newindex > LASTPOSITION)
+						newindex = newindex - LASTPOSITION;
+					value = calcBloodPressureValue(newindex);
+				}
+			}
+			else if (aapeak >= 0.5 && aapreviouspeak < 0.5 && index < 50 * ONE) {
+				 value = 0;
+			}
+			else {
+				value = calcBloodPressureValue(index);
+			}
+		}
+		// For AVBlock rhythm, every fourth amplitude has to be skipped.
+		else if (heartrhythm == Event.HeartPattern.AVBLOCK) {
+			// The amplitude starts at index 52 so this value has to be zero.
+			if (avblockpeak == 3 && index > 51 * ONE)
+				value = 0;
+			// The end of the amplitude is in the beginning of the array, this also has to be zero.
+			else if (avblockpeak == 0 && index < 50 * ONE)
+				value = 0;
+			// For all the other amplitudes the standard calculation we used in the sine rhythm works just fine.
+			else
+				value = calcBloodPressureValue(index);
+		}
+		// If the heartrhythm is ventflutter nearly no blood gets pumped at all. The shrinked 
+		// ventflutter heartrate pattern itself can be used to simulate the bloodemission.
+		else if (heartrhythm == Event.HeartPattern.VENTFLUTTER) {
+			value = Math.abs((calcHeartRateValue(WaveformAtlas.VENTFLUTTER, index) - 40)/35);
+		}
+		// If the heartrhythm is ventfibri nearly no blood gets pumped at all. The shrinked 
+		// ventfibri heartrate pattern itself can be used to simulate the bloodemission.
+		else if (heartrhythm == Event.HeartPattern.VENTFIBRI) {
+			value = Math.abs((calcHeartRateValue(WaveformAtlas.VENTFIBRI, index) - 25)/25);
+		}
+		// In case of a reanimation the blood gets pumped with the pushing frequenzy of the reanimator.
+		else if (heartrhythm == Event.HeartPattern.CPR) {
+			value = Math.abs((calcHeartRateValue(WaveformAtlas.CPR, index))/10);
+		}
+		// If there is no heart contraction no blood gets pumped through the body and no BP curve is visible.
+		else if (heartrhythm == Event.HeartPattern.ASYSTOLE)
+			value = 0;
+		// Else show the normal bloodpressure curve.
+		else {
+			value = calcBloodPressureValue(index);
+		}
+		// If maxbloodpressure is under 50 make curve even flatter.
+		if ((maxbloodpressure) <= 50)
+			value = value/2;
+		// Return the value of the curve shifted by diastolic bloodpressure.
+		return value + minbloodpressure * 0.55;
+	}
+
+	// Returns the current O2 saturation value in dependence of the index counter.
+	// Also calls the O2 peak function.
+	public double getO2Value() {
+		double value;
+		int threshold = O2MaxValue - O2MaxValue/10;
+		// In case of ventricular flutter or fibrillation and also in asystole the SPO2 sensor 
+		// doesn't messure a oxygen saturation so the value stays on zero.
+		if (heartrhythm == Event.HeartPattern.VENTFLUTTER || heartrhythm == Event.HeartPattern.VENTFIBRI || heartrhythm == Event.HeartPattern.ASYSTOLE)
+			value = 0;
+		// In case of a reanimation the blood gets pumped with the pushing frequenzy of the reanimator. The
+		// oxygen saturation is low.
+		else if (heartrhythm == Event.HeartPattern.CPR) {
+			value = Math.abs((calcHeartRateValue(WaveformAtlas.CPR, index))/25);
+			// Trigger blink and random variation.
+			triggerO2peak(value, threshold);
+		}
+		// For the oxygen saturation curve in aa rhythm we have to consider if the previous heart beat has been taken or skipped.
+		// With the previous and the actual random number ("aapreviouspeak, aapeak") there are four possibilities.
+		else if (heartrhythm == Event.HeartPattern.ARRYTHMIC || heartrhythm == Event.HeartPattern.LEFTBLOCKAA) {
+			if (aapreviouspeak >= 0.5) {
+				// Case 1: Two pressure peaks in succession. One usual for index <= 66 and one for index > 66
+				if (aapeak < 0.5 && index > 66 * ONE) {
+					// Newindex shifts the subsiding part of the pattern to the beginning of the array.
+					int newindex = index - 63 * ONE;
+					value = calcSPO2Value(newindex);
+				}
+				// Case 2: One standard peak -> return usual oxygen value as used in sine pattern.
+				else
+					value = calcSPO2Value(index);
+			}
+			else {
+				// Case 3: Skip a standard peak. Return one value for index > 63. 
+				if (aapeak >= 0.5 && index > 63 * ONE)
+					value = 8;
+				// Case 4: A shifted peak before the usual peak in the standard pattern.
+				else {
+					// Newindex shifts the subsiding part of the pattern to the beginning of the array.
+					int newindex = index - 63 * ONE;
+					if (newindex < 0)
+						newindex = newindex + LASTPOSITION;
+					value = calcSPO2Value(newindex);
+				}
+			}
+			// Trigger Blink and randomvariation.
+			triggerO2peak(value, threshold);
+		}
+		// If the heartrhythm is avblock, every fourth heart beat is skipped so there is also no oxygen saturated
+		// blood that gets pumped through the body which can be measured by the sensor.
+		else if (heartrhythm == Event.HeartPattern.AVBLOCK) {
+			// The fourth heart peak which is skipped is at avblock == 3, the oxygen sensor measures this one array 
+			// later so it is at avblock == 0.
+			if (avblockpeak == 0)
+			value = 8;
+			// All other oxygen saturation peaks are plotted as normal.
+			else
+				value = calcSPO2Value(index);
+			// Trigger Blink and randomvariation.
+			triggerO2peak(value, threshold);
+		}
+		// In case of other heartrhythms the patient has normal O2 saturation and we can read out the array normally.
+		else {
+			value = calcSPO2Value(index);
+			// Trigger Blink and randomvariation.
+			triggerO2peak(value, threshold);
+		}
+		// If the patient has a low bloodpressure the O2 saturation gets shrinked.
+		if (maxbloodpressure < 70 || coldfinger == true)
+			value = value/20;
+		// Return the value.
+		return value;
+	}
+	
+	// Returns the current CO2 value in dependence of the CO2index counter. 
+	public double getCO2Value() {
+		double value;
+		// If there's no respiration the sensor measures no CO2 value
+		if (respirationrate == 0)
+			value = 0;
+		else {
+			// Interpolate if index is a decimal.
+			value = WaveformAtlas.sample(WaveformAtlas.CO2, CO2index) * CO2MaxValue * 1.1f;
+		}
+		return value;
+	}
+	
+	// Produces n samples of every curve in one loop. This gives the same values as calling getHeartRateValue(),
+	// getBloodPressureValue(), getO2Value(), getCO2Value() and increment() n times, but the rhythm only
+	// changes at the end of a heart cycle, so the rhythm is dispatched once for every run of samples and the
+	// common rhythms (sine, left bundle branch block, STEMI) get a loop of their own.
+	// A curve whose array is null is not calculated and triggers no peaks, like a curve which is not shown.
+	// Changed settings are applied once at the beginning of the frame.
+	public void fillFrame(float[] ecg, float[] bp, float[] spo2, float[] co2, int n) {
+		applyParameters();
+		int i = 0;
+		while (i < n) {
+			final Event.HeartPattern rhythm = heartrhythm;
+			if (rhythm == Event.HeartPattern.SINE)
+				i = fillRegular(ecg, bp, spo2, co2, i, n, rhythm, WaveformAtlas.SINE, 50);
+			else if (rhythm == Event.HeartPattern.LEFTBLOCK)
+				i = fillRegular(ecg, bp, spo2, co2, i, n, rhythm, WaveformAtlas.LBBB, 50);
+			else if (rhythm == Event.HeartPattern.STEMI)
+				i = fillRegular(ecg, bp, spo2, co2, i, n, rhythm, WaveformAtlas.STEMI, 50 + 20);
+			else {
+				// The other rhythms keep state from sample to sample, use the per sample calculation.
+				for (; i < n && heartrhythm == rhythm; ++i) {
+					if (ecg != null)
+						ecg[i] = (float)getHeartRateValue();
+					if (bp != null)
+						bp[i] = (float)getBloodPressureValue();
+					if (co2 != null)
+						co2[i] = (float)getCO2Value();
+					if (spo2 != null)
+						spo2[i] = (float)getO2Value();
+					step();
+				}
+			}
+		}
+	}
+	
+	// Fills the arrays from position i on for a rhythm which just reads out its pattern, until n samples are
+	// produced or the rhythm changes. All settings are read once, they are only changed between two frames.
+	// Returns the position of the next sample.
+	private int fillRegular(float[] ecg, float[] bp, float[] spo2, float[] co2, int i, int n,
+			Event.HeartPattern rhythm, int pattern, int threshold) {
+		final boolean flatbp = maxbloodpressure <= 50;
+		final double bpoffset = minbloodpressure * 0.55;
+		final int O2threshold = O2MaxValue - O2MaxValue/10;
+		final boolean shrinkO2 = maxbloodpressure < 70 || coldfinger == true;
+		final boolean breathing = respirationrate != 0;
+		final int inc = heartrate * ONE / basicheartrate;
+		final int CO2inc = respirationrate * ONE / basicheartrate;
+		for (; i < n && heartrhythm == rhythm; ++i) {
+			if (ecg != null) {
+				double heartratevalue = calcHeartRateValue(pattern, index);
+				triggerBeepBlink(heartratevalue, threshold);
+				ecg[i] = (float)heartratevalue;
+			}
+			if (bp != null) {
+				double value = calcBloodPressureValue(index);
+				if (flatbp)
+					value = value/2;
+				bp[i] = (float)(value + bpoffset);
+			}
+			if (co2 != null)
+				co2[i] = breathing ? WaveformAtlas.sample(WaveformAtlas.CO2, CO2index) * CO2MaxValue * 1.1f : 0;
+			if (spo2 != null) {
+				double value = calcSPO2Value(index);
+				triggerO2peak(value, O2threshold);
+				if (shrinkO2)
+					value = value/20;
+				spo2[i] = (float)value;
+			}
+			advance(inc, CO2inc);
+		}
+		return i;
+	}
+	
+	// Returns the number of samples generated so far, e.g. to measure samples per second.
+	public long getSampleCount() {
+		return samplecount;
+	}
+	
+	// Sets the due time (System.nanoTime()) of the next sample and the time between two samples in ns.
+	// Called by the sampling thread before a frame, the following samples are timed from it.
+	public void setFrameTime(long time, long period) {
+		frametime = time;
+		frameperiod = period;
+		framesample = samplecount;
+	}
+	
+	// Returns the due time of the sample which is calculated at the moment.
+	private long sampleTime() {
+		if (frameperiod == 0)
+			return System.nanoTime();
+		return frametime + (samplecount - framesample) * frameperiod;
+	}
+	
+	// Gets called when the defibrillator is used. Sets the pattern to asystole for a short period of time.
+	// If the asystole pattern is passed through the heartrhythm before the shock is applied.
+	// Applied by the sampling thread at the beginning of the next frame.
+	public synchronized void getShocked() {
+		Parameters p = new Parameters(parameters);
+		p.shockcommand = ++p.command;
+		parameters = p;
+	}
+	
+	// Applies a defibrillation.
+	private void shock() {
+		index = 0;
+		CO2index = 0;
+		nextrhythm = heartrhythm;
+		heartrhythm = Event.HeartPattern.ASYSTOLE;
+	}
+}
@@ -6,8 +6,6 @@
 
 package monitor.pack;
 
-import java.util.Timer;
-import java.util.TimerTask;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.media.AudioAttributes;
@@ -22,6 +20,7 @@ import android.os.Build;
 /**
  * A class which handles the complete sound-output of a patient-monitor. This consists of the
  * playback of given sound-files and the generation and playback of sounds with a given frequency. 
+ * The generated sounds (beeps and alarms) are summed up by one AudioMixer into one audio-stream.
  */
 public class SoundHandler {
 	
@@ -44,12 +43,34 @@ public class SoundHandler {
 		// Load the pump-sound for non invasive blood pressure measurement.
 		_bpSound = _sp.load(m, R.raw.bpmeasuremntsound, 1);
 		
+		// Get the minimum number of samples to get a proper sound.
+		int minBufSize = AudioTrack.getMinBufferSize(_sampleRate, 
+	    		AudioFormat.CHANNEL_OUT_MONO, 
+	    		AudioFormat.ENCODING_PCM_16BIT);
+		// Render all tones in advance, so no beep or alarm has to wait for its synthesis.
+		_tones = new ToneCache(_sampleRate, minBufSize, _soundVolume, _maxAlarmVol, _fadeFraction);
+		for (int i = 0; i < _heartFreqs.length; i++) {
+			_tones.get(_heartFreqs[i], _soundLength, ToneCache.ENVELOPE_CONSTANT);
+		}
+		_tones.get(_alarmFreq, _alarmLength, ToneCache.ENVELOPE_FADE);
+		_tones.get(_alarmFreq, _asysAlarmLength, ToneCache.ENVELOPE_FADE);
+		_tones.get(_asysAlarmFreq, _asysAlarmLength, ToneCache.ENVELOPE_FADE);
+		// Open the audio-stream of the mixer, it stays open until destroy(). It buffers a few blocks of the
+		// mixer, more would only delay the sounds.
+		int bufSize = Math.max(minBufSize, 4 * AudioMixer.BLOCK_SIZE * 2);
+		_audioTrack = createStreamTrack(bufSize);
+		_mixer = new AudioMixer(new AudioMixer.Output() {
+			public void write(short[] samples, int count) {
+				_audioTrack.write(samples, 0, count);
+			}
+		}, _sampleRate, bufSize / 2);
+		_mixer.start();
+		
 		// Initialize some members.
 		_ekgAlarm = false;
 		_rrAlarm = false;
 		_o2Alarm = false;
 		_alarmOn = false;
-		_asysNormalSound = true;
 		_asysAlarmOn = false;
 	}
 	
@@ -62,190 +83,38 @@ public class SoundHandler {
 	}
 	
 	/**
-	 * A function which plays a sine sound with a given frequency for a given time.
-	 * (Based on code form Singhak (http://stackoverflow.com/questions/2413426/playing-an-arbitrary-tone-with-android).)
+	 * A function which plays a sine sound with a given frequency for a given time. The sound is
+	 * rendered once by the tone cache and played by the mixer as soon as possible.
 	 *
 	 *@param freq - Frequency of the sound.
 	 *@param length - Length of the sound in ms.
 	 */
 	public void playFreqSound(float freq, int length) {
-		// Calculate the needed number of samples to get the given play-length.
-		int bufSize = length * (_sampleRate / 1000);
-		// Get the minimum number of samples to get a proper sound.
-	    int minBufSize = AudioTrack.getMinBufferSize(_sampleRate, 
-	    		AudioFormat.CHANNEL_OUT_MONO, 
-	    		AudioFormat.ENCODING_PCM_16BIT);
-	    // Correct the number samples if necessary.
-	    if (bufSize < minBufSize) {
-	    	bufSize = minBufSize;
-	    }
-	    // Create a buffer with the calculated length and fill it with samples of sine wave with the given frequency.
-	    short[] buffer = new short[bufSize];
-	    float angle = 0;
-	    float angular_frequency = (float) (2*Math.PI) * freq / _sampleRate;
-	    for (int i = 0; i < buffer.length; i++) {
-	    	buffer[i] = (short)(Short.MAX_VALUE * ((float) Math.sin(angle)) * _soundVolume );
-	    	angle += angular_frequency;
-	    }
-	    // Close the (old) AudioTrack if necessary.
-	    if (_soundAudioTrack != null) {
-	    	_soundAudioTrack.release();
-	    }
-	    // Create a new audio-stream and start it. 
-	    _soundAudioTrack = new AudioTrack(AudioManager.STREAM_MUSIC,
-	    		_sampleRate, 
-	    		AudioFormat.CHANNEL_OUT_MONO, 
-	    		AudioFormat.ENCODING_PCM_16BIT, 
-	    		bufSize, 
-	    		AudioTrack.MODE_STREAM);
-	    _soundAudioTrack.play();
-	    // Output the buffer via the stream and stop it.
-	    int b = _soundAudioTrack.write(buffer, 0, buffer.length);
-	    _soundAudioTrack.stop();
-	    if (DEBUG) System.out.println("Number of bytes written to sound audioTrack: " + b);
+		_mixer.play(_tones.get(freq, length, ToneCache.ENVELOPE_CONSTANT), AudioMixer.PRIORITY_BEEP);
 	}
 	
 	/**
 	 * A function which plays a sine alarm-sound with a given frequency for a given time. The sound fades
 	 * in at the begin and fades out at the end.
-	 * (Based on code form Singhak (http://stackoverflow.com/questions/2413426/playing-an-arbitrary-tone-with-android).)
 	 *
 	 *@param freq - Frequency of the sound.
 	 *@param length - Length of the sound in ms.
 	 */
 	public void playFreqAlarm(float freq, int length) {
-		// Calculate the needed number of samples to get the given play-length.
-		int bufSize = length * (_sampleRate / 1000);
-		// Get the minimum number of samples to get a proper sound.
-	    int minBufSize = AudioTrack.getMinBufferSize(_sampleRate, 
-	    		AudioFormat.CHANNEL_OUT_MONO, 
-	    		AudioFormat.ENCODING_PCM_16BIT);
-	    // Correct the number samples if necessary.
-	    if (bufSize < minBufSize) {
-	    	bufSize = minBufSize;
-	    }
-	    // Calculate the number of periods in the whole sound.
-	    float periodNumber = freq * ((float) length / 1000.0f);
-	    // Calculate the number of samples in one period.
-	    float samplesPerPeriod = ((float) bufSize) / periodNumber;
-	    // Calculate how much the volume of each period must be increased/decreased to fade in/out the sound.
-	    float incDecFactor = _maxAlarmVol / (periodNumber / _fadeFraction);
-	    // Some running variables.
-	    int periodCount = 1;
-	    float multFactor = 0;
-	    if (DEBUG) {
-	    	System.out.println("periodNumber: " + periodNumber 
-	    			+ ", samplesPerPeriod: " + samplesPerPeriod 
-	    			+ ", incDecFactor: " + incDecFactor);
-	    }
-	    // Create a buffer with the calculated length and fill it with samples of sine wave with the given frequency.
-	    short[] buffer = new short[bufSize];
-	    float angle = 0;
-	    float angular_frequency = (float) (2*Math.PI) * freq / _sampleRate;
-	    for (int i = 0; i < buffer.length; i++) {
-	    	buffer[i] = (short)(Short.MAX_VALUE * ((float) Math.sin(angle)) * multFactor);
-	    	angle += angular_frequency;
-	    	// Check if one hole period is completed.
-	    	if (i >= (samplesPerPeriod * periodCount)) {
-	    		periodCount++;
-	    		// When we are in last fraction of the sound, decrease the multiplication factor
-	    		// which represents the volume of a period.
-	    		if (periodCount > ((_fadeFraction - 1.0f) * (periodNumber / _fadeFraction))) {
-	    			multFactor = _maxAlarmVol - incDecFactor * ((float) (periodCount - (int) ((_fadeFraction - 1.0f) *(periodNumber / _fadeFraction))));
-	    			if (DEBUG) System.out.println("2. Half - multfactor: " + multFactor);
-	    		} 
-	    		// When we are in first fraction of the sound, increase the multiplication factor
-	    		// which represents the volume of a period.
-	    		if (periodCount < (periodNumber / _fadeFraction)) {
-	    			multFactor = incDecFactor * (float) periodCount;
-	    			if (DEBUG) System.out.println("1. Half - multfactor: " + multFactor);
-	    		}
-	    	}
-	    }
-	    // Close the (old) AudioTrack if necessary.
-	    if (_alarmAudioTrack != null) {
-	    	_alarmAudioTrack.release();
-	    }
-	    // Create a new audio-stream and start it. 
-	    _alarmAudioTrack = new AudioTrack(AudioManager.STREAM_MUSIC,
-	    		_sampleRate, 
-	    		AudioFormat.CHANNEL_OUT_MONO, 
-	    		AudioFormat.ENCODING_PCM_16BIT, 
-	    		buffer.length, 
-	    		AudioTrack.MODE_STREAM);
-	    _alarmAudioTrack.play();
-	    // Output the buffer via the stream and stop it.
-	    int b = _alarmAudioTrack.write(buffer, 0, buffer.length);
-	    _alarmAudioTrack.stop();
-	    if (DEBUG) System.out.println("Number of bytes written to alarm audioTrack: " + b);
+		_mixer.play(_tones.get(freq, length, ToneCache.ENVELOPE_FADE), AudioMixer.PRIORITY_ALARM);
 	}
 	
 	/**
-	 * Plays the heart-beat-sound once corresponding to current o2 saturation.
+	 * Plays the heart-beat-sound once corresponding to current o2 saturation, a constant delay after
+	 * the peak of the heart-curve.
 	 *
 	 *@param o2SatAvailable - Indicates if a o2 saturation value is available.
 	 *@param o2Sat - The current o2 saturation.
+	 *@param time - The time of the peak (System.nanoTime()).
 	 */
-	public void playHeartSound(boolean o2SatAvailable, int o2Sat) {
-		if (o2SatAvailable) {
-			// If the o2 saturation vary the frequency of the sound according to it.
-			switch (o2Sat) {
-				case 100:
-					playFreqSound(2200, _soundLength);  // CIS
-				break;
-				case 99:
-					playFreqSound(2093, _soundLength);  // C
-				break;
-				case 98:
-					playFreqSound(1975, _soundLength);  // H
-				break;
-				case 97:
-					playFreqSound(1864, _soundLength);  // AIS
-					break;
-				case 96:
-					playFreqSound(1760, _soundLength);  // A
-					break;
-				case 95:
-					playFreqSound(1661, _soundLength);  // GIS
-					break;
-				case 94:
-					playFreqSound(1567, _soundLength);  // G
-					break;
-				case 93:
-					playFreqSound(1479, _soundLength);  // FIS
-					break;
-				case 92:
-					playFreqSound(1369, _soundLength);  // F
-					break;
-				case 91:
-					playFreqSound(1318, _soundLength);  // E
-					break;
-				case 90:
-					playFreqSound(1244, _soundLength);  // DIS
-					break;
-				case 89:
-					playFreqSound(1174, _soundLength);  // D
-					break;
-				case 88:
-					playFreqSound(1108, _soundLength);  // CIS
-					break;
-				case 87:
-					playFreqSound(1046, _soundLength);  // C
-					break;
-				case 86:
-					playFreqSound(987, _soundLength);  // H
-					break;
-				case 85:
-					playFreqSound(932, _soundLength);  // AIS
-					break;
-				default:
-					playFreqSound(932, _soundLength);  // AIS
-					break;
-			}
-		} else {
-			// If no o2 saturation is available play the standard 932Hz-Sound.
-			playFreqSound(932, _soundLength);  // AIS
-		}
+	public void playHeartSound(boolean o2SatAvailable, int o2Sat, long time) {
+		_mixer.play(_tones.get(heartFreq(o2SatAvailable, o2Sat), _soundLength, ToneCache.ENVELOPE_CONSTANT), 
+				AudioMixer.PRIORITY_BEEP, time);
 	}
 	
 	/**
@@ -298,26 +167,16 @@ public class SoundHandler {
 			// If the alarm isn't already active, start it.
 			if(!_asysAlarmOn) {
 			// Start a sound which plays the normal alarm sound followed by lower sound and
-			// repeat it until it's stopped. 
+			// repeat it until it's stopped. It mutes the parameter alarm.
 			_asysAlarmOn = true;
-			_asysTimer = new Timer();
-			_asysTimer.scheduleAtFixedRate(new TimerTask() {
-		        	public void run(){
-		        		if (_asysNormalSound) {
-		        			playFreqAlarm(_alarmFreq, _asysAlarmLength);
-		        			_asysNormalSound = false;
-		        		} else {
-		        			playFreqAlarm(_asysAlarmFreq, _asysAlarmLength);
-		        			_asysNormalSound = true;
-		        		}
-		    		}
-	        	}, _asysAlarmInterval, _asysAlarmInterval);
+			_mixer.startLoop(AudioMixer.PRIORITY_ASYSTOLE, 
+					_tones.get(_alarmFreq, _asysAlarmLength, ToneCache.ENVELOPE_FADE), 
+					_tones.get(_asysAlarmFreq, _asysAlarmLength, ToneCache.ENVELOPE_FADE), 
+					_asysAlarmInterval);
 			}
 		} else {
 			// Stop the sound.
-			if (_asysTimer != null) {
-				_asysTimer.cancel();
-			}
+			_mixer.stopLoop(AudioMixer.PRIORITY_ASYSTOLE);
 			_asysAlarmOn = false;
 		}
 	}
@@ -326,10 +185,9 @@ public class SoundHandler {
 	 * Destroys all used instances if necessary.
 	 */
 	public void destroy() {
-		if (_soundAudioTrack != null) _soundAudioTrack.release();
-		if (_alarmAudioTrack != null) _alarmAudioTrack.release();
-		if (_timer != null) _timer.cancel();
-		if (_asysTimer != null) _asysTimer.cancel();
+		// Stop the mixer before the stream, it mustn't write to a released stream.
+		_mixer.stop();
+		_audioTrack.release();
 		if (_sp != null) _sp.release();
 	}
 	
@@ -365,6 +223,39 @@ public class SoundHandler {
 	
   // PRIVATE:
 	
+	/**
+	 * Creates an audio-stream for mono 16 bit PCM samples and starts it. Nothing is played until
+	 * samples are written.
+	 *
+	 *@param bufSize - Size of the buffer of the stream in bytes.
+	 *@return The started stream.
+	 */
+	private AudioTrack createStreamTrack(int bufSize) {
+		AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC,
+	    		_sampleRate, 
+	    		AudioFormat.CHANNEL_OUT_MONO, 
+	    		AudioFormat.ENCODING_PCM_16BIT, 
+	    		bufSize, 
+	    		AudioTrack.MODE_STREAM);
+		track.play();
+		return track;
+	}
+	
+	/**
+	 * Returns the frequency of the heart-beat-sound corresponding to current o2 saturation.
+	 *
+	 *@param o2SatAvailable - Indicates if a o2 saturation value is available.
+	 *@param o2Sat - The current o2 saturation.
+	 */
+	private float heartFreq(boolean o2SatAvailable, int o2Sat) {
+		if (o2SatAvailable && o2Sat <= 100 && o2Sat >= 100 - _heartFreqs.length + 1) {
+			// If the o2 saturation vary the frequency of the sound according to it.
+			return _heartFreqs[100 - o2Sat];
+		}
+		// If no o2 saturation is available (or it is below the table) play the standard 932Hz-Sound.
+		return 932;  // AIS
+	}
+	
 	/**
 	 * Create the soundPool acording to API-levels lower 21.
 	 */
@@ -394,23 +285,17 @@ public class SoundHandler {
 		if ((_ekgAlarm || _rrAlarm || _o2Alarm || _co2Alarm) && !_asysAlarmOn) {
 			if (!_alarmOn) {
 				// If at least one of the three alarms should be active and the
-				// alarm-sound isn't already activated start the alarm by scheduling a
+				// alarm-sound isn't already activated start the alarm by repeating a
 				// sound every _alarmInterval.
 				if (DEBUG) System.out.println("Start Alarm");
 				_alarmOn = true;
-				_timer = new Timer();
-		    	_timer.scheduleAtFixedRate(new TimerTask() {
-			        	public void run(){
-			        		playFreqAlarm(_alarmFreq, _alarmLength);
-			    		}
-		        	}, _alarmInterval, _alarmInterval);
+				short[] tone = _tones.get(_alarmFreq, _alarmLength, ToneCache.ENVELOPE_FADE);
+				_mixer.startLoop(AudioMixer.PRIORITY_ALARM, tone, null, _alarmInterval);
 			}
 		} else if (_alarmOn) {
 			// If no of the three alarms should be active, deactivate the alarm-sound.
 			if (DEBUG) System.out.println("Stop Alarm");
-			if (_timer != null) {
-				_timer.cancel();
-			}
+			_mixer.stopLoop(AudioMixer.PRIORITY_ALARM);
 			_alarmOn = false;
 		}
 	}
@@ -437,6 +322,24 @@ public class SoundHandler {
 	// fade out time are. The first fraction is the fade in time, the
 	// last the fade out time. Must be >= 2.0f.
 	private final float _fadeFraction = 3.0f;
+	// The frequencies of the heart-beat-sound for the o2 saturations from 100 down to 85.
+	private final float[] _heartFreqs = {
+			2200,  // CIS
+			2093,  // C
+			1975,  // H
+			1864,  // AIS
+			1760,  // A
+			1661,  // GIS
+			1567,  // G
+			1479,  // FIS
+			1369,  // F
+			1318,  // E
+			1244,  // DIS
+			1174,  // D
+			1108,  // CIS
+			1046,  // C
+			987,  // H
+			932};  // AIS
 	// The length of one asystole alarm sound.
 	private final int _asysAlarmLength = 500;
 	// The frequency of the second asystole alarm sound.
@@ -446,8 +349,6 @@ public class SoundHandler {
 	
 	// MEMBERS:
 	private SoundPool _sp;  // The soundPool/sound-player.
-	private Timer _timer;  // The alarm-sound-timer.
-	private Timer _asysTimer;  // The asystole alarm-sound-timer.
 	private int _bpSound;  // The pump-sound for non invasive blood pressure measurement
 	// Flags which indicates if the alarm for a parameter should be active.
 	private boolean _ekgAlarm;
@@ -458,11 +359,12 @@ public class SoundHandler {
 	private boolean _alarmOn;
 	// A flags which indicates if the alarm-sound is active.
 	private boolean _asysAlarmOn;
-	// A flags which indicates which asystole alarm sound should be played next.
-	private boolean _asysNormalSound;
-	// The AudioTracks.
-	AudioTrack _soundAudioTrack;
-	AudioTrack _alarmAudioTrack;
+	// The cache of the rendered tones.
+	private final ToneCache _tones;
+	// The audio-stream of the mixer.
+	final AudioTrack _audioTrack;
+	// Mixes the beeps and alarms into the audio-stream.
+	private final AudioMixer _mixer;
 	
 	// Members for the defi-mode.
 	MediaPlayer _defiMp;
@@ -0,0 +1,162 @@
+/*
+ * Copyright: Universitt Freiburg, 2015
+ */
+
+package monitor.pack;
+
+/**
+ * A cache of pre-rendered tones for the SoundHandler. A tone is a buffer of 16 bit mono PCM samples
+ * which is given by its frequency, its length and its envelope. The heart sound uses one tone per o2
+ * saturation and the alarms use two tones, so there are only a few tones and each one is rendered
+ * once by ToneSynth. Playing a cached tone allocates nothing. 
+ * The class has no Android dependencies, so the synthesis can be run and measured on a plain JVM.
+ */
+final class ToneCache {
+	
+	
+  // PUBLIC:
+	
+	// Envelope of a tone with constant volume.
+	static final int ENVELOPE_CONSTANT = 0;
+	// Envelope of an alarm tone, which fades in at the begin and fades out at the end.
+	static final int ENVELOPE_FADE = 1;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param sampleRate - The sampling-rate of the tones.
+	 * @param minSamples - The minimum number of samples of a tone to get a proper sound.
+	 * @param volume - The volume of the tones with constant volume.
+	 * @param maxAlarmVol - The maximum volume of the alarm tones.
+	 * @param fadeFraction - The number by which the length of an alarm tone is divided, the first
+	 * 						 fraction is the fade in time, the last the fade out time. Must be >= 2.0f.
+	 */
+	ToneCache(int sampleRate, int minSamples, float volume, float maxAlarmVol, float fadeFraction) {
+		_sampleRate = sampleRate;
+		_minSamples = minSamples;
+		_volume = volume;
+		_maxAlarmVol = maxAlarmVol;
+		_fadeFraction = fadeFraction;
+	}
+	
+	/**
+	 * Returns a tone, it is rendered on the first request. 
+	 * The returned buffer is shared and must not be changed.
+	 *
+	 *@param freq - Frequency of the tone.
+	 *@param length - Length of the tone in ms.
+	 *@param envelope - ENVELOPE_CONSTANT or ENVELOPE_FADE.
+	 *@return The samples of the tone.
+	 */
+	synchronized short[] get(float freq, int length, int envelope) {
+		for (int i = 0; i < _count; i++) {
+			Tone tone = _tones[i];
+			if (tone.freq == freq && tone.length == length && tone.envelope == envelope) {
+				_hits++;
+				return tone.samples;
+			}
+		}
+		_misses++;
+		short[] samples;
+		if (envelope == ENVELOPE_FADE) {
+			samples = renderAlarm(freq, length);
+		} else {
+			samples = renderSound(freq, length);
+		}
+		// Tones beyond the capacity are not cached, but there are much less tones in use.
+		if (_count < _tones.length) {
+			_tones[_count++] = new Tone(freq, length, envelope, samples);
+		}
+		return samples;
+	}
+	
+	/**
+	 * Renders a sine tone with a given frequency and length and constant volume.
+	 *
+	 *@param freq - Frequency of the sound.
+	 *@param length - Length of the sound in ms.
+	 *@return The samples of the tone.
+	 */
+	short[] renderSound(float freq, int length) {
+		short[] buffer = new short[bufferSize(length)];
+		ToneSynth.sine(buffer, freq, _sampleRate, _volume);
+		return buffer;
+	}
+	
+	/**
+	 * Renders a sine alarm-tone with a given frequency and length. The tone fades in at the begin and
+	 * fades out at the end.
+	 *
+	 *@param freq - Frequency of the sound.
+	 *@param length - Length of the sound in ms.
+	 *@return The samples of the tone.
+	 */
+	short[] renderAlarm(float freq, int length) {
+		short[] buffer = new short[bufferSize(length)];
+		float[] envelope = ToneSynth.fadeEnvelope(buffer.length, freq, length, _maxAlarmVol, _fadeFraction);
+		ToneSynth.sine(buffer, freq, _sampleRate, envelope);
+		return buffer;
+	}
+	
+	/**
+	 * @return The number of requests answered from the cache.
+	 */
+	synchronized long getHits() {
+		return _hits;
+	}
+	
+	/**
+	 * @return The number of requests which rendered a tone.
+	 */
+	synchronized long getMisses() {
+		return _misses;
+	}
+	
+	
+  // PRIVATE:
+	
+	/**
+	 * Returns the number of samples of a tone with the given length, at least the minimum number.
+	 */
+	private int bufferSize(int length) {
+		return Math.max(length * (_sampleRate / 1000), _minSamples);
+	}
+	
+	/**
+	 * A rendered tone and its key.
+	 */
+	private static final class Tone {
+		Tone(float freq, int length, int envelope, short[] samples) {
+			this.freq = freq;
+			this.length = length;
+			this.envelope = envelope;
+			this.samples = samples;
+		}
+		
+		final float freq;
+		final int length;
+		final int envelope;
+		final short[] samples;
+	}
+	
+	// FINAL MEMBERS:
+	// The maximum number of cached tones.
+	private static final int MAX_TONES = 32;
+	// The sampling-rate of the tones.
+	private final int _sampleRate;
+	// The minimum number of samples of a tone.
+	private final int _minSamples;
+	// The volume of the tones with constant volume.
+	private final float _volume;
+	// Maximum volume of the alarm tones.
+	private final float _maxAlarmVol;
+	// The number by which the length of the alarm tone is divided for fading.
+	private final float _fadeFraction;
+	
+	// MEMBERS:
+	private final Tone[] _tones = new Tone[MAX_TONES];  // The cached tones.
+	private int _count;  // The number of cached tones.
+	// Statistics.
+	private long _hits;
+	private long _misses;
+}
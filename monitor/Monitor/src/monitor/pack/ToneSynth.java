@@ -0,0 +1,138 @@
+/*
+ * Copyright: Universitt Freiburg, 2015
+ */
+
+package monitor.pack;
+
+/**
+ * Table driven synthesis of sine tones for the ToneCache. A wavetable oscillator reads one period of a
+ * sine from a table with a 32 bit phase accumulator and interpolates linearly between the entries, so
+ * no sample needs a call of Math.sin(). The fade of the alarm tones is calculated once as an envelope
+ * with one gain per sample. 
+ * The class has no Android dependencies, so it can be run and measured on a plain JVM.
+ */
+final class ToneSynth {
+	
+	
+  // PUBLIC:
+	
+	/**
+	 * Fills a buffer with a sine tone of constant volume.
+	 *
+	 *@param buffer - The buffer, it is filled completely.
+	 *@param freq - Frequency of the tone, below the half sampling-rate.
+	 *@param sampleRate - The sampling-rate of the tone.
+	 *@param volume - The volume of the tone, 1.0f is the full scale.
+	 */
+	static void sine(short[] buffer, float freq, int sampleRate, float volume) {
+		final int inc = phaseIncrement(freq, sampleRate);
+		int phase = 0;
+		for (int i = 0; i < buffer.length; i++) {
+			buffer[i] = (short) (Short.MAX_VALUE * sample(phase) * volume);
+			phase += inc;
+		}
+	}
+	
+	/**
+	 * Fills a buffer with a sine tone whose volume is given for every sample.
+	 *
+	 *@param buffer - The buffer, it is filled completely.
+	 *@param freq - Frequency of the tone, below the half sampling-rate.
+	 *@param sampleRate - The sampling-rate of the tone.
+	 *@param envelope - The volume of every sample, at least as long as the buffer.
+	 */
+	static void sine(short[] buffer, float freq, int sampleRate, float[] envelope) {
+		final int inc = phaseIncrement(freq, sampleRate);
+		int phase = 0;
+		for (int i = 0; i < buffer.length; i++) {
+			buffer[i] = (short) (Short.MAX_VALUE * sample(phase) * envelope[i]);
+			phase += inc;
+		}
+	}
+	
+	/**
+	 * Calculates the envelope of an alarm tone, which fades in during the first fraction of the tone and
+	 * fades out during the last one. The volume changes once per period of the tone, like the fade of
+	 * the former playFreqAlarm() of the SoundHandler.
+	 *
+	 *@param size - The number of samples of the tone.
+	 *@param freq - Frequency of the tone.
+	 *@param length - Length of the tone in ms, the periods of the tone are spread over all samples.
+	 *@param maxVol - The volume between the fades.
+	 *@param fadeFraction - The number by which the length of the tone is divided, the first fraction is
+	 * 						the fade in time, the last the fade out time. Must be >= 2.0f.
+	 *@return The volume of every sample.
+	 */
+	static float[] fadeEnvelope(int size, float freq, int length, float maxVol, float fadeFraction) {
+		float[] envelope = new float[size];
+		// Calculate the number of periods in the whole sound.
+		final float periodNumber = freq * ((float) length / 1000.0f);
+		// Calculate the number of samples in one period.
+		final float samplesPerPeriod = ((float) size) / periodNumber;
+		// Calculate how much the volume of each period must be increased/decreased to fade in/out the sound.
+		final float incDecFactor = maxVol / (periodNumber / fadeFraction);
+		// The periods after which the fade in ends and the fade out begins.
+		final float fadeInEnd = periodNumber / fadeFraction;
+		final float fadeOutBegin = (fadeFraction - 1.0f) * (periodNumber / fadeFraction);
+		int periodCount = 1;
+		float multFactor = 0;
+		int i = 0;
+		while (i < size) {
+			// The volume holds up to the first sample at or after the end of the period, inclusive.
+			int end = Math.max(i, (int) Math.ceil(samplesPerPeriod * periodCount));
+			end = Math.min(end, size - 1);
+			for (; i <= end; i++) {
+				envelope[i] = multFactor;
+			}
+			periodCount++;
+			if (periodCount > fadeOutBegin) {
+				multFactor = maxVol - incDecFactor * ((float) (periodCount - (int) fadeOutBegin));
+			}
+			if (periodCount < fadeInEnd) {
+				multFactor = incDecFactor * (float) periodCount;
+			}
+		}
+		return envelope;
+	}
+	
+	
+  // PRIVATE:
+	
+	/**
+	 * Returns the phase increment of one sample for a frequency, a whole period is 2^32.
+	 */
+	private static int phaseIncrement(float freq, int sampleRate) {
+		return (int) Math.round((double) freq / sampleRate * PHASE_PERIOD);
+	}
+	
+	/**
+	 * Returns the sine of a phase, interpolated between two entries of the table.
+	 */
+	private static float sample(int phase) {
+		int index = phase >>> FRACTION_BITS;
+		float fraction = (phase & FRACTION_MASK) * (1.0f / (1 << FRACTION_BITS));
+		float s = SINE[index];
+		return s + (SINE[index + 1] - s) * fraction;
+	}
+	
+	// FINAL MEMBERS:
+	// The size of the sine table is 2^TABLE_BITS.
+	private static final int TABLE_BITS = 12;
+	private static final int TABLE_SIZE = 1 << TABLE_BITS;
+	// The bits of the phase below the index of the table.
+	private static final int FRACTION_BITS = 32 - TABLE_BITS;
+	private static final int FRACTION_MASK = (1 << FRACTION_BITS) - 1;
+	// A whole period of the phase.
+	private static final double PHASE_PERIOD = 4294967296.0;
+	// One period of a sine, the last entry repeats the first one for the interpolation.
+	private static final float[] SINE = new float[TABLE_SIZE + 1];
+	
+	static {
+		for (int i = 0; i <= TABLE_SIZE; i++) {
+			SINE[i] = (float) Math.sin(2 * Math.PI * i / TABLE_SIZE);
+		}
+	}
+	
+	private ToneSynth() {
+	}
+}
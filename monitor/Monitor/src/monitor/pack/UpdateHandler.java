@@ -5,13 +5,12 @@
 
 package monitor.pack;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 
 /**
  * A class which handles the updating of the parameters on the patient monitor
- * when a new event from the controller arrives.
+ * when a new event from the controller arrives. An event may carry only a part
+ * of the parameters (delta-event), the other parameters keep their values and
+ * their running schedules.
  */
 public class UpdateHandler {
 	
@@ -29,8 +28,6 @@ public class UpdateHandler {
 	 * @param jsonEvent - The new event as JSON string.
 	 */
 	public void updateGui(String jsonEvent) {
-		// Cancel an old scheduled task if necessary.
-		if (_timer != null) _timer.cancel();
 		// Try to parse the given JSON string into an Event-object.
 		Event e;
 		try {
@@ -39,83 +36,7 @@ public class UpdateHandler {
 			System.err.println(ex);
 			return;
 		}
-		// Synchronize the timer.
-		if(e._timerState == Event.TimerState.START) {
-			_mms.startStopTimer(true);
-		} else if (e._timerState == Event.TimerState.STOP || e._timerState == Event.TimerState.PAUSE) {
-			_mms.startStopTimer(false);
-		} else if (e._timerState == Event.TimerState.RESET) {
-			_mms.resetTimer();
-		}
-		if(e._syncTimer) {
-			_mms.setTimerValue(e._timeStamp);
-		}
-		// Update the EKG- and the O2-curve-pattern.
-		_mms.changeEKGPattern(e._heartPattern);
-		_mms.changeO2Pattern(e._oxyPattern);
-		// Update the active-states.
-		_mms.setEKGActive(e._heartOn);
-		_mms.setRRActive(e._bpOn);
-		_mms.setO2Active(e._oxyOn);
-		_mms.setCO2Active(e._carbOn);
-		_mms.setNIBPActive(e._cuffOn);
-		_mms.setRespActive(e._respOn);
-		// When there is a schedule-time:
-		if (e._time > 0) {
-			// Get the current values for EKG, blood pressure, O2 and CO2.
-			updateValues();
-			// Calculate the division-factor.
-			_divFactor = Math.round(((float) e._time) / _updateInterval);
-			// Calculate the increment/decrement steps-size for each parameter.
-			final float heartRateInc = (float) (e._heartRateTo - _startEKGValue) / _divFactor;
-			final float diaBloodPressureInc = (float) (e._bloodPressureDias - _startDiaBPValue) / _divFactor;
-			final float sysBloodPressureInc = (float) (e._bloodPressureSys - _startSysBPValue) / _divFactor;
-			final float o2Inc = (float) (e._oxygenTo - _starto2Value) / _divFactor;
-			final float co2Inc = (float) (e._carbTo - _startco2Value) / _divFactor;
-			final float respInc = (float) (e._respRate - _startRespValue) / _divFactor;
-			if (DEBUG) {
-				System.out.println("Start values:");
-				System.out.println("EKG: " + _startEKGValue
-						+ ", DiaBP: " + _startDiaBPValue
-						+ ", SysBP: " + _startSysBPValue
-						+ ", O2: " + _starto2Value
-						+ ", CO2: " + _startco2Value
-						+ ", Resp: " + _startRespValue);
-				System.out.println("Number of increment steps: " + _divFactor);
-				System.out.println("Increment-Step-Sizes:");
-				System.out.println("EKGInc: " + heartRateInc
-						+ ", DiaBPInc: " + diaBloodPressureInc
-						+ ", SysBPInc: " + sysBloodPressureInc
-						+ ", O2Inc: " + o2Inc
-						+ ", CO2Inc: " + co2Inc
-						+ ", RespInc: " + respInc);
-			}
-			_updateCount = 0;
-			// Create a scheduled task which increases/decreases the parameters
-			// each time step until the given final value is reached.
-			_timer = new Timer();
-	    	_timer.scheduleAtFixedRate(new TimerTask() {
-		        	public void run(){
-		        		_updateCount++;  // Count the steps.
-		        		_mms.setEKG(_startEKGValue + (int) (heartRateInc * (float) _updateCount));
-		    			_mms.setIBP(_startDiaBPValue + (int) (diaBloodPressureInc * (float) _updateCount),
-		    					_startSysBPValue + (int) (sysBloodPressureInc * (float) _updateCount));
-		    			_mms.setO2(_starto2Value + (int) (o2Inc * (float) _updateCount));
-		    			_mms.setCO2(_startco2Value + (int) (co2Inc * (float) _updateCount));
-		    			_mms.setResp(_startRespValue + (int) (respInc * (float) _updateCount));
-		    			if (_updateCount >= _divFactor) {
-		    				this.cancel();
-		    			}
-		        	}
-	        	}, (int) (_updateInterval * 1000), (int) (_updateInterval * 1000));
-	    // When there is no schedule-time, just set the values directly.
-		} else {
-			_mms.setEKG(e._heartRateTo);
-			_mms.setIBP(e._bloodPressureDias, e._bloodPressureSys);
-			_mms.setO2(e._oxygenTo);
-			_mms.setCO2(e._carbTo);
-			_mms.setResp(e._respRate);
-		}
+		updateGui(e);
 	}
 	
 	
@@ -126,100 +47,129 @@ public class UpdateHandler {
 	 * @param e - The new event.
 	 */
 	public void updateGui(final Event e) {
-		// Cancel an old scheduled task if necessary.
-		if (_timer != null) _timer.cancel();
+		updateGui(e, EventCodec.presentFields(e));
+	}
+	
+	/**
+	 * Updates the GUI with the fields of the event which are set in the
+	 * field-mask, either immediately or step by step if a schedule time is set.
+	 * The schedules of parameters which are not part of the event keep running.
+	 * 
+	 * @param e - The new event.
+	 * @param fields - The fields to apply (see EventCodec).
+	 */
+	public synchronized void updateGui(Event e, int fields) {
 		// Synchronize the timer.
-		if(e._timerState == Event.TimerState.START) {
-			_mms.startStopTimer(true);
-		} else if (e._timerState == Event.TimerState.STOP || e._timerState == Event.TimerState.PAUSE) {
-			_mms.startStopTimer(false);
-		} else if (e._timerState == Event.TimerState.RESET) {
-			_mms.resetTimer();
+		if (has(fields, EventCodec.F_TIMER_STATE)) {
+			if(e._timerState == Event.TimerState.START) {
+				_mms.startStopTimer(true);
+			} else if (e._timerState == Event.TimerState.STOP || e._timerState == Event.TimerState.PAUSE) {
+				_mms.startStopTimer(false);
+			} else if (e._timerState == Event.TimerState.RESET) {
+				_mms.resetTimer();
+			}
 		}
-		if(e._syncTimer) {
+		if(e._syncTimer && has(fields, EventCodec.F_TIME_STAMP)) {
 			_mms.setTimerValue(e._timeStamp);
 		}
 		// Update the EKG- and the O2-curve-pattern.
-		_mms.changeEKGPattern(e._heartPattern);
-		_mms.changeO2Pattern(e._oxyPattern);
+		if (has(fields, EventCodec.F_HEART_PATTERN)) _mms.changeEKGPattern(e._heartPattern);
+		if (has(fields, EventCodec.F_OXY_PATTERN)) _mms.changeO2Pattern(e._oxyPattern);
 		// Update the active-states.
-		_mms.setEKGActive(e._heartOn);
-		_mms.setRRActive(e._bpOn);
-		_mms.setO2Active(e._oxyOn);
-		_mms.setCO2Active(e._carbOn);
-		_mms.setNIBPActive(e._cuffOn);
-		_mms.setRespActive(e._respOn);
-		// When there is a schedule-time:
-		if (e._time > 0) {
-			// Get the current values for EKG, blood pressure, O2 and CO2.
-			updateValues();
-			// Calculate the division-factor.
-			_divFactor = Math.round(((float) e._time) / _updateInterval);
-			// Calculate the increment/decrement steps-size for each parameter.
-			final float heartRateInc = (float) (e._heartRateTo - _startEKGValue) / _divFactor;
-			final float diaBloodPressureInc = (float) (e._bloodPressureDias - _startDiaBPValue) / _divFactor;
-			final float sysBloodPressureInc = (float) (e._bloodPressureSys - _startSysBPValue) / _divFactor;
-			final float o2Inc = (float) (e._oxygenTo - _starto2Value) / _divFactor;
-			final float co2Inc = (float) (e._carbTo - _startco2Value) / _divFactor;
-			final float respInc = (float) (e._respRate - _startRespValue) / _divFactor;
-			if (DEBUG) {
-				System.out.println("Start values:");
-				System.out.println("EKG: " + _startEKGValue
-						+ ", DiaBP: " + _startDiaBPValue
-						+ ", SysBP: " + _startSysBPValue
-						+ ", O2: " + _starto2Value
-						+ ", CO2: " + _startco2Value
-						+ ", Resp: " + _startRespValue);
-				System.out.println("Number of increment steps: " + _divFactor);
-				System.out.println("Increment-Step-Sizes:");
-				System.out.println("EKGInc: " + heartRateInc
-						+ ", DiaBPInc: " + diaBloodPressureInc
-						+ ", SysBPInc: " + sysBloodPressureInc
-						+ ", O2Inc: " + o2Inc
-						+ ", CO2Inc: " + co2Inc
-						+ ", RespInc: " + respInc);
+		if (has(fields, EventCodec.F_HEART_ON)) _mms.setEKGActive(e._heartOn);
+		if (has(fields, EventCodec.F_BP_ON)) _mms.setRRActive(e._bpOn);
+		if (has(fields, EventCodec.F_OXY_ON)) _mms.setO2Active(e._oxyOn);
+		if (has(fields, EventCodec.F_CARB_ON)) _mms.setCO2Active(e._carbOn);
+		if (has(fields, EventCodec.F_CUFF_ON)) _mms.setNIBPActive(e._cuffOn);
+		if (has(fields, EventCodec.F_RESP_ON)) _mms.setRespActive(e._respOn);
+		// Number of increment-steps, 0 if there is no schedule-time.
+		int steps = 0;
+		if (has(fields, EventCodec.F_TIME) && e._time > 0) {
+			steps = Math.round(((float) e._time) / _updateInterval);
+		}
+		// Start a schedule (or set directly) for every parameter in the event.
+		if (has(fields, EventCodec.F_HEART_RATE_TO)) startRamp(EKG, _mms.getEKGValue(), e._heartRateTo, steps);
+		if (has(fields, EventCodec.F_BP_DIAS)) startRamp(DIA_BP, _mms.getDiaBPValue(), e._bloodPressureDias, steps);
+		if (has(fields, EventCodec.F_BP_SYS)) startRamp(SYS_BP, _mms.getSysBPValue(), e._bloodPressureSys, steps);
+		if (has(fields, EventCodec.F_OXYGEN_TO)) startRamp(O2, _mms.getO2Value(), e._oxygenTo, steps);
+		if (has(fields, EventCodec.F_CARB_TO)) startRamp(CO2, _mms.getCO2Value(), e._carbTo, steps);
+		if (has(fields, EventCodec.F_RESP_RATE)) startRamp(RESP, _mms.getRespValue(), e._respRate, steps);
+		if (steps == 0) {
+			// When there is no schedule-time, just set the values directly.
+			if (has(fields, EventCodec.F_HEART_RATE_TO)) _mms.setEKG(e._heartRateTo);
+			if (has(fields, EventCodec.F_BP_DIAS) || has(fields, EventCodec.F_BP_SYS)) {
+				_mms.setIBP(has(fields, EventCodec.F_BP_DIAS) ? e._bloodPressureDias : _mms.getDiaBPValue(),
+						has(fields, EventCodec.F_BP_SYS) ? e._bloodPressureSys : _mms.getSysBPValue());
 			}
-			_updateCount = 0;
+			if (has(fields, EventCodec.F_OXYGEN_TO)) _mms.setO2(e._oxygenTo);
+			if (has(fields, EventCodec.F_CARB_TO)) _mms.setCO2(e._carbTo);
+			if (has(fields, EventCodec.F_RESP_RATE)) _mms.setResp(e._respRate);
+		} else if (_task == null) {
 			// Create a scheduled task which increases/decreases the parameters
-			// each time step until the given final value is reached.
-			_timer = new Timer();
-		   	_timer.scheduleAtFixedRate(new TimerTask() {
-		        	public void run(){
-		        		_updateCount++;  // Count the steps.
-		        		_mms.setEKG(_startEKGValue + (int) (heartRateInc * (float) _updateCount));
-		    			_mms.setIBP(_startDiaBPValue + (int) (diaBloodPressureInc * (float) _updateCount),
-		    					_startSysBPValue + (int) (sysBloodPressureInc * (float) _updateCount));
-		    			_mms.setO2(_starto2Value + (int) (o2Inc * (float) _updateCount));
-		    			_mms.setCO2(_startco2Value + (int) (co2Inc * (float) _updateCount));
-		    			_mms.setResp(_startRespValue + (int) (respInc * (float) _updateCount));
-		    			if (_updateCount >= _divFactor) {
-		    				this.cancel();
-		    			}
-		        	}
-		       	}, (int) (_updateInterval * 1000), (int) (_updateInterval * 1000));
-		// When there is no schedule-time, just set the values directly.
-		} else {
-			_mms.setEKG(e._heartRateTo);
-			_mms.setIBP(e._bloodPressureDias, e._bloodPressureSys);
-			_mms.setO2(e._oxygenTo);
-			_mms.setCO2(e._carbTo);
-			_mms.setResp(e._respRate);
+			// each time step until the given final values are reached.
+			_task = _mms.getScheduler().scheduleAtFixedRate(new MonitorScheduler.Task() {
+				public void run() {
+					if (!stepRamps()) {
+						this.cancel();
+					}
+				}
+			}, (int) (_updateInterval * 1000), (int) (_updateInterval * 1000));
 		}
 	}
 	
   // PRIVATE:
 	
+	private static boolean has(int fields, int field) {
+		return EventCodec.has(fields, field);
+	}
+	
+	/**
+	 * Starts the schedule of one parameter, a step count of 0 stops a running
+	 * schedule of the parameter.
+	 */
+	private void startRamp(int param, int startValue, int endValue, int steps) {
+		_rampStart[param] = startValue;
+		_rampCount[param] = 0;
+		_rampSteps[param] = steps;
+		_rampInc[param] = steps > 0 ? (float) (endValue - startValue) / steps : 0f;
+		if (DEBUG) {
+			System.out.println("Parameter " + param + ": start " + startValue
+					+ ", steps " + steps + ", increment " + _rampInc[param]);
+		}
+	}
+	
 	/**
-	 * Gets the current EKG, blood pressure, o2, co2 and respiration values from the monitor
-	 * as start-values.
+	 * Does one step of every running schedule.
+	 * 
+	 * @return False if no schedule is running any more.
 	 */
-	private void updateValues() {
-		_startEKGValue = _mms.getEKGValue();
-		_startDiaBPValue = _mms.getDiaBPValue();
-		_startSysBPValue = _mms.getSysBPValue();
-		_starto2Value = _mms.getO2Value();
-		_startco2Value = _mms.getCO2Value();
-		_startRespValue = _mms.getRespValue();
+	private synchronized boolean stepRamps() {
+		if (step(EKG)) _mms.setEKG(rampValue(EKG));
+		boolean dia = step(DIA_BP);
+		boolean sys = step(SYS_BP);
+		if (dia || sys) {
+			_mms.setIBP(dia ? rampValue(DIA_BP) : _mms.getDiaBPValue(),
+					sys ? rampValue(SYS_BP) : _mms.getSysBPValue());
+		}
+		if (step(O2)) _mms.setO2(rampValue(O2));
+		if (step(CO2)) _mms.setCO2(rampValue(CO2));
+		if (step(RESP)) _mms.setResp(rampValue(RESP));
+		for (int i = 0; i < PARAM_COUNT; i++) {
+			if (_rampCount[i] < _rampSteps[i]) return true;
+		}
+		_task.cancel();
+		_task = null;
+		return false;
+	}
+	
+	private boolean step(int param) {
+		if (_rampCount[param] >= _rampSteps[param]) return false;
+		_rampCount[param]++;  // Count the steps.
+		return true;
+	}
+	
+	private int rampValue(int param) {
+		return _rampStart[param] + (int) (_rampInc[param] * (float) _rampCount[param]);
 	}
 	
 	
@@ -229,20 +179,25 @@ public class UpdateHandler {
 	// The update-interval-time in seconds. For REALLY exact timing use values 0.1, 0.2, 0.5, 1.
 	// Otherwise the number of increment-steps will maybe rounded.
 	private final float _updateInterval = 0.5f;
+	// The parameters which can be scheduled.
+	private static final int EKG = 0;
+	private static final int DIA_BP = 1;
+	private static final int SYS_BP = 2;
+	private static final int O2 = 3;
+	private static final int CO2 = 4;
+	private static final int RESP = 5;
+	private static final int PARAM_COUNT = 6;
 	
 	// MEMBERS:
 	private MonitorMainScreen _mms;  // The main GUI-Thread.
-	private Timer _timer;  // The schedule-timer.
-	// The scheduled time divided by the updateInterval -> Number of increment-steps.
-	private float _divFactor;
+	private MonitorScheduler.Task _task;  // The schedule-task, null if no schedule is running.
 	// The parameter values before the begin of an scheduled update.
-	private int _startEKGValue;
-	private int _startDiaBPValue;
-	private int _startSysBPValue;
-	private int _starto2Value;
-	private int _startco2Value;
-	private int _startRespValue;
-	// Counter for the update-steps.
-	private int _updateCount;
+	private final int[] _rampStart = new int[PARAM_COUNT];
+	// The increment/decrement step-size of each parameter.
+	private final float[] _rampInc = new float[PARAM_COUNT];
+	// Number of increment-steps of each parameter.
+	private final int[] _rampSteps = new int[PARAM_COUNT];
+	// Counter for the update-steps of each parameter.
+	private final int[] _rampCount = new int[PARAM_COUNT];
 
 }
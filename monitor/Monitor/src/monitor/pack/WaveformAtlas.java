@@ -0,0 +1,296 @@
+
+package monitor.pack;
+
+/**
+
+ * The waveform atlas of the signal engine. The basic patterns for heartrhythm,
+ * blood pressure, O2 saturation and CO2 are built once with 100 values each
+ * and stored in one float array. The curves are defined by these values, so
+ * they are interpolated linearly at sampling time instead of being stored at
+ * a higher resolution. Positions are given in 16.16 fixed point, so sampling
+ * needs no floor/ceil and no double arithmetic. The atlas is immutable and
+ * shared by all engines.
+ *
+
+ * @version 1.0
+
+ */
+
+final class WaveformAtlas {
+	// The tables in the atlas.
+	static final int SINE = 0;
+	static final int PACE = 1;
+	static final int LBBB = 2;
+	static final int STEMI = 3;
+	static final int VENTFLUTTER = 4;
+	static final int VENTFIBRI = 5;
+	static final int CPR = 6;
+	static final int ASYSTOLE = 7;
+	static final int BLOODPRESSURE = 8;
+	static final int SPO2 = 9;
+	static final int CO2 = 10;
+	static final int TABLE_COUNT = 11;
+	// The number of values of the basic patterns.
+	static final int SOURCE_SIZE = 100;
+	// Number of fraction bits of a fixed point position, ONE is the position 1.0.
+	static final int FRACTION_BITS = 16;
+	static final int ONE = 1 << FRACTION_BITS;
+	// Number of atlas values per table: the basic pattern and a copy of its last value, so the
+	// interpolation at the last position stays inside the table.
+	static final int SEGMENT = SOURCE_SIZE + 1;
+	// Converts the fraction bits of a position to float.
+	private static final float FRACTION_SCALE = 1.0f / ONE;
+	// Pi
+	private static final double PI = 3.14159265359;
+	// The atlas.
+	private static final float[] ATLAS = build();
+	
+	private WaveformAtlas() {
+	}
+	
+	// Returns the value of a table at a fixed point position between 0 and 99, linearly interpolated.
+	static float sample(int table, int position) {
+		int i = table * SEGMENT + (position >> FRACTION_BITS);
+		float a = ATLAS[i];
+		return a + (ATLAS[i + 1] - a) * ((position & (ONE - 1)) * FRACTION_SCALE);
+	}
+	
+	// Returns the value of a table at the integer part of a fixed point position.
+	static float sampleFloor(int table, int position) {
+		return ATLAS[table * SEGMENT + (position >> FRACTION_BITS)];
+	}
+	
+	// Converts a fixed point position to double.
+	static double toDouble(int position) {
+		return position / (double) ONE;
+	}
+	
+	// Builds the basic patterns and copies them into the atlas.
+	private static float[] build() {
+		double[][] sources = buildSources();
+		float[] atlas = new float[TABLE_COUNT * SEGMENT];
+		for (int t = 0; t < TABLE_COUNT; ++t) {
+			double[] source = sources[t];
+			for (int i = 0; i < SOURCE_SIZE; ++i) {
+				atlas[t * SEGMENT + i] = (float) source[i];
+			}
+			// A position never passes the last value (they wrap at 99), hold it.
+			atlas[t * SEGMENT + SOURCE_SIZE] = (float) source[SOURCE_SIZE - 1];
+		}
+		return atlas;
+	}
+	
+	// Creates the basic patterns with 100 values each.
+	private static double[][] buildSources() {
+		double[] sine = new double[SOURCE_SIZE];
+		double[] pace = new double[SOURCE_SIZE];
+		double[] lbbb = new double[SOURCE_SIZE];
+		double[] stemi = new double[SOURCE_SIZE];
+		double[] ventflutter = new double[SOURCE_SIZE];
+		double[] ventfibri = new double[SOURCE_SIZE];
+		double[] cpr = new double[SOURCE_SIZE];
+		double[] asystolic = new double[SOURCE_SIZE];
+		double[] bloodpressure = new double[SOURCE_SIZE];
+		double[] spo2 = new double[SOURCE_SIZE];
+		double[] co2 = new double[SOURCE_SIZE];
+		// -------------------
+		// CREATE SINE PATTERN
+		// -------------------
+		for (int i = 0; i <= 99; ++i) {
+			sine[i] = 0;
+		}
+		for (int i = 1; i <= 10; ++i) {
+			sine[i - 1 + 27] = 10 * (Math.sin(i * PI/10));
+		}
+		for (int i = 1; i <= 2; ++i) {
+			sine[i - 1 + 49] = -9 * (Math.sin(i * PI/4));
+		}
+		for (int i =1; i <= 12; ++i) {
+			sine[i - 1 + 52] = sine[i - 1 + 51] + 9.363636;
+		}
+		sine[61] = 93;
+		for (int i = 1;  i <= 4; ++i) {
+			sine[i - 1 + 62] = sine[i - 1 + 61] - 28.5;
+		}
+		for (int i = 1; i <= 2; ++i) {
+			sine[i - 1 + 66] = -20 * (Math.sin((3 + i) * PI/5));
+		}
+		sine[67] = -1.2;
+		sine[68] = - 1;
+		for (int i = 1; i <= 18; ++i) {
+			sine[i - 1 + 81] = 15 * (Math.sin(i * PI/18));
+		}
+		// ------------------------
+		// CREATE PACEMAKER PATTERN
+		// ------------------------
+		for (int i = 0; i <= 99; ++i) {
+			pace[i] = 0;
+		}
+		for (int i = 1; i <= 10; ++i) {
+			pace[i - 1 + 27] = 10 * (Math.sin(i * PI/10));
+		}
+		for (int i = 1; i <= 2; ++i) {
+			pace[i - 1 + 49] = -9 * (Math.sin(i * PI/4));
+		}
+		for (int i =1; i <= 12; ++i) {
+			pace[i - 1 + 52] = pace[i - 1 + 51] + 9.363636;
+		}
+		pace[61] = 93;
+		for (int i = 1;  i <= 4; ++i) {
+			pace[i - 1 + 62] = pace[i - 1 + 61] - 28.5;
+		}
+		for (int i = 1; i <= 2; ++i) {
+			pace[i - 1 + 66] = -20 * (Math.sin((3 + i) * PI/5));
+		}
+		pace[67] = -1.2;
+		pace[68] = - 1;
+		for (int i = 1; i <= 18; ++i) {
+			pace[i - 1 + 81] = 15 * (Math.sin(i * PI/18));
+		}
+		pace[40] = 80;
+		// ---------------------------------------
+		// CREATE LEFT BUNDLE BRANCH BLOCK PATTERN
+		// ---------------------------------------
+		for (int i = 0; i <= 99; ++i) {
+			lbbb[i] = 0;
+		}
+		for (int i = 1; i <= 10; ++i) {
+			lbbb[i - 1 + 27] = 10 * (Math.sin(i * PI/10));
+		}
+		for (int i = 1; i <= 3; ++i) {
+			lbbb[i - 1 + 50] = lbbb[i - 1 + 49] + 26.67;
+		}
+		for (int i =1; i <= 4; ++i) {
+			lbbb[i - 1 + 53] = lbbb[i - 1 + 52] - 2.5;
+		}
+		for (int i = 1;  i <= 6; ++i) {
+			lbbb[i - 1 + 57] = lbbb[i - 1 + 56] +3.83;
+		}
+		for (int i = 1;  i <= 5; ++i) {
+			lbbb[i - 1 + 63] = lbbb[i - 1 + 62] - 18.6;
+		}
+		lbbb[67] = -1.2;
+		lbbb[68] = - 1;
+		for (int i = 1; i <= 21; ++i) {
+			lbbb[i - 1 + 72] = - 15 * (Math.sin(i * PI/21));
+		}
+		for (int i = 1; i <= 6; ++i) {
+			lbbb[i - 1 + 93] = 2 * (Math.sin(i * PI/6));
+		}
+		// --------------------
+		// CREATE STEMI PATTERN
+		// --------------------
+		for (int i = 0; i <= 99; ++i) {
+			stemi[i] = 0;
+		}
+		for (int i = 1; i <= 10; ++i) {
+			stemi[i - 1 + 27] = 10 * (Math.sin(i * PI/10));
+		}
+		for (int i = 1; i <= 2; ++i) {
+			stemi[i - 1 + 49] = -9 * (Math.sin(i * PI/4));
+		}
+		for (int i =1; i <= 12; ++i) {
+			stemi[i - 1 + 52] = stemi[i - 1 + 51] + 9.363636;
+		}
+		stemi[61] = 93;
+		for (int i = 1;  i <= 2; ++i) {
+			stemi[i - 1 + 62] = stemi[i - 1 + 61] - 28.5;
+		}
+		for (int i = 1; i <= 9; ++i) {
+			stemi[i - 1 + 64] = 36;
+		}
+		for (int i = 1; i <= 21; ++i) {
+			stemi[i - 1 + 72] = 15 * (Math.sin(i * PI/21)) + 36;
+		}
+		for (int i = 1; i < 6; ++i) {
+			stemi[i - 1 + 93] = stemi[i - 1 + 92] - 6;
+		}
+		// ----------------------------------
+		// CREATE VENTRICULAR FLUTTER PATTERN
+		// ----------------------------------
+		for (int i = 0; i <= 99; ++i) {
+			ventflutter[i] = Math.sin(2 * PI * i/12.35) * 50 + 40;
+		}
+		// ---------------------------------------
+		// CREATE VENTRICULAR FIBRILLATION PATTERN
+		// ---------------------------------------
+		for (int i = 0; i <= 99; ++i) {
+			ventfibri[i] = Math.sin(2 * PI * i/9.1) * 10 + 5;
+		}
+		// ------------------
+		// CREATE CPR PATTERN
+		// ------------------
+		for (int i = 0; i <= 99; ++i) {
+			cpr[i] = Math.sin(2 * PI * i/33) * 40 + 30;
+		}		
+		// ---------------------
+		// CREATE ASYSTOLIC LINE
+		// ---------------------
+		for (int i = 0; i <= 99; ++i) {
+			asystolic[i] = Math.sin(2 * PI * i/99) * 2;
+		}
+		// ----------------------------------
+		// CREATE BASIC BLOODPRESSURE PATTERN
+		// ----------------------------------
+		for (int i = 1; i <= 100; ++i) {
+			bloodpressure[i - 1] = 0;
+		}
+		for (int i = 1; i <= 48; ++i) {
+			bloodpressure[i - 1 + 52] = Math.sin(i * PI/48);
+		}
+		for (int i = 1; i <= 50; ++i) {
+			if (i - 1 + 95 > 99)
+				bloodpressure[i - 1 + 95 - 100] = 0.5 * Math.sin((39 + i) * PI/90);
+    		else
+    			bloodpressure[i - 1 + 95] = 0.5 * Math.sin((39 + i) * PI/90);
+    	}
+		bloodpressure[95] = 0.38;
+		bloodpressure[96] = 0.41;
+		bloodpressure[97] = 0.43;
+		bloodpressure[98] = 0.45;
+		bloodpressure[99] = 0.47;
+		// -------------------
+		// CREATE spo2 PATTERN
+		// -------------------
+		for (int i = 1; i <= 100; ++i) {
+			spo2[i - 1] = 0;
+		}
+		for (int i = 1; i <= 30; ++i) {
+			spo2[i - 1] = Math.sin(i * PI/48);
+		}
+		for (int i = 1; i <= 70; ++i) {
+			if (i >= 25 && i <= 33)
+				spo2[i - 1 + 30] = 0.9 * (1 + 0.005 * i) * Math.exp(- 0.4 * (i - 1)*2*PI/72);
+			else
+				spo2[i - 1 + 30] = 0.9 * Math.exp(- 0.4 * (i - 1)*2*PI/72);
+		}
+		// ------------------
+		// CREATE co2 PATTERN
+		// ------------------
+		for (int i = 1; i <= 100; ++i) {
+			co2[i - 1] = 0;
+		}
+		for (int i = 1; i <= 19; ++i) {
+			co2[i - 1 + 44] = i * 0.048;
+		}
+		for(int i = 1; i <= 28; ++i) {
+			co2[i - 1 + 63] = 0.9 + (i * 0.003);
+		}
+		for(int i = 1; i <= 9; ++i) {
+			co2[i - 1 + 91] = 1 - (i * 1.0/9.0);
+		}
+		double[][] sources = new double[TABLE_COUNT][];
+		sources[SINE] = sine;
+		sources[PACE] = pace;
+		sources[LBBB] = lbbb;
+		sources[STEMI] = stemi;
+		sources[VENTFLUTTER] = ventflutter;
+		sources[VENTFIBRI] = ventfibri;
+		sources[CPR] = cpr;
+		sources[ASYSTOLE] = asystolic;
+		sources[BLOODPRESSURE] = bloodpressure;
+		sources[SPO2] = spo2;
+		sources[CO2] = co2;
+		return sources;
+	}
+}